@@ -32,6 +32,28 @@ public interface FAInterface {
 	 * @param symbol to add to the alphabet set
 	 */
 	public void addSigma(char symbol);
+	
+	/**
+	 * Removes a state together with every transition into or out of it.
+	 * If the state was the start state, the FA is left without a start state.
+	 * @param name is the label of the state
+	 * @return true if successful and false if no state with such name exists
+	 */
+	public boolean removeState(String name);
+	
+	/**
+	 * Marks an existing state as a non-accepting state
+	 * @param name is the label of the state
+	 * @return true if successful and false if no state with such name exists
+	 */
+	public boolean unsetFinal(String name);
+	
+	/**
+	 * Removes a symbol from Sigma together with every transition on it
+	 * @param symbol to remove from the alphabet set
+	 * @return true if the symbol was removed and false if it was not in Sigma
+	 */
+	public boolean removeSigma(char symbol);
 
 
 	/**
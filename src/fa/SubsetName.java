@@ -0,0 +1,47 @@
+package fa;
+
+/**
+ * Builds the name of a state that stands for a set of states, such as the
+ * states made by the subset construction: "[a, c]" for the set of a and c.
+ * Inside a member name, the characters ',', '[', ']' and '\' are preceded
+ * by a backslash. The only unescaped ", " in a name is therefore a
+ * separator, so different member lists always get different names, even
+ * when a member is itself called "a, c".
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class SubsetName {
+
+    private final StringBuilder sb = new StringBuilder("[");
+    private boolean empty = true;
+
+    /**
+     * Appends a member; members should be added in a fixed order, such as
+     * by state ID, so that equal sets get equal names.
+     *
+     * @param member the name of the member state
+     * @return this builder
+     */
+    public SubsetName add(String member) {
+        if (!empty) {
+            sb.append(", ");
+        }
+        empty = false;
+        for (int i = 0; i < member.length(); i++) {
+            char c = member.charAt(i);
+            if (c == ',' || c == '[' || c == ']' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * @return the name of the set built so far
+     */
+    @Override
+    public String toString() {
+        return sb + "]";
+    }
+}
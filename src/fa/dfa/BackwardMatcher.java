@@ -0,0 +1,142 @@
+package fa.dfa;
+
+/**
+ * Matches inputs from the last character to the first with the reversed
+ * automaton of a DFA. For suffix-anchored languages such as "every string
+ * ending in abc", the outcome is known after a few characters from the
+ * end, while a forward run has to read the whole input.
+ *
+ * Each state of the reversed automaton is classified once. A state is dead
+ * when no final state can be reached from it, and universal when it is
+ * final and every symbol leads to a universal state, so that every further
+ * string over the alphabet is accepted. The scan stops at the first dead
+ * or universal state. After a universal state the rest of the input is
+ * still checked for characters outside the alphabet, which DFA.accepts
+ * rejects, but that check needs no table lookups.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class BackwardMatcher implements Matcher {
+
+    /** The reversed automaton */
+    private final CompactDFA reversed;
+
+    /** States from which no final state can be reached */
+    private final boolean[] dead;
+
+    /** States from which every string over the alphabet is accepted */
+    private final boolean[] universal;
+
+    /**
+     * Builds a backward matcher from the reversed automaton of a DFA.
+     *
+     * @param reversed the automaton of the reversed language
+     */
+    BackwardMatcher(CompactDFA reversed) {
+        this.reversed = reversed;
+        int n = reversed.stateCount();
+        int k = reversed.symbolCount();
+
+        int[] dist = LanguageAnalysis.distanceToFinal(reversed);
+        dead = new boolean[n];
+        for (int s = 0; s < n; s++) {
+            dead[s] = dist[s] < 0;
+        }
+
+        // Greatest fixed point: drop candidates with a successor outside the set
+        universal = new boolean[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int s = 0; s < n; s++) {
+            universal[s] = reversed.isFinal(s);
+            for (int i = 0; i < k && universal[s]; i++) {
+                universal[s] = reversed.next(s, i) >= 0;
+            }
+            if (!universal[s]) {
+                queue[tail++] = s;
+            }
+        }
+        int[][] edges = LanguageAnalysis.reverseEdges(reversed);
+        int[] offset = edges[0];
+        int[] from = edges[1];
+        for (int head = 0; head < tail; head++) {
+            int t = queue[head];
+            for (int e = offset[t]; e < offset[t + 1]; e++) {
+                int s = from[e];
+                if (universal[s]) {
+                    universal[s] = false;
+                    queue[tail++] = s;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines whether the DFA accepts a string, reading it backwards.
+     *
+     * @param s the input
+     * @return true if the DFA accepts s
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        int state = reversed.startState();
+        if (state < 0) {
+            return false;
+        }
+        for (int j = s.length(); ; j--) {
+            if (dead[state]) {
+                return false;
+            }
+            if (universal[state]) {
+                return inAlphabet(s, j);
+            }
+            if (j == 0) {
+                return reversed.isFinal(state);
+            }
+            state = reversed.step(state, s.charAt(j - 1));
+            if (state < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Runs the reversed automaton from the end of a string until its
+     * outcome is decided.
+     *
+     * @param s the input
+     * @return the number of leading characters left unread when the outcome
+     *         was decided, 0 if the whole input was read, or -1 if a dead
+     *         state or a missing transition rejected the input
+     */
+    public int stopIndex(CharSequence s) {
+        int state = reversed.startState();
+        if (state < 0) {
+            return -1;
+        }
+        for (int j = s.length(); ; j--) {
+            if (dead[state]) {
+                return -1;
+            }
+            if (universal[state] || j == 0) {
+                return j;
+            }
+            state = reversed.step(state, s.charAt(j - 1));
+            if (state < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return true if the first end characters of s are all in the alphabet
+     */
+    private boolean inAlphabet(CharSequence s, int end) {
+        for (int j = 0; j < end; j++) {
+            if (reversed.symbolIndex(s.charAt(j)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
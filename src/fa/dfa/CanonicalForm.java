@@ -0,0 +1,171 @@
+package fa.dfa;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A canonical encoding of the reachable part of a DFA. States are
+ * renumbered in breadth-first order from the start state, expanding
+ * symbols in character order, so the encoding does not depend on state
+ * names, on the order in which states or symbols were added, or on states
+ * that cannot be reached. Two DFAs have the same encoding exactly when
+ * their reachable parts are identical up to renaming of states.
+ *
+ * The encoding is the alphabet size, the sorted alphabet, the number of
+ * reachable states and then, per state in canonical order, its final flag
+ * followed by the canonical target on each symbol (-1 if missing).
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+final class CanonicalForm {
+
+    private CanonicalForm() {
+    }
+
+    /**
+     * Computes the canonical encoding of a compiled DFA.
+     *
+     * @param dfa the compiled automaton
+     * @return the encoding
+     */
+    static int[] encode(CompactDFA dfa) {
+        int k = dfa.symbolCount();
+        int[] order = LanguageAnalysis.sortedSymbols(dfa);
+        int[] canonical = number(dfa, order);
+        int[] queue = states(canonical);
+        int tail = queue.length;
+
+        int[] code = new int[2 + k + tail * (k + 1)];
+        int p = 0;
+        code[p++] = k;
+        for (int i : order) {
+            code[p++] = dfa.symbol(i);
+        }
+        code[p++] = tail;
+        for (int j = 0; j < tail; j++) {
+            int s = queue[j];
+            code[p++] = dfa.isFinal(s) ? 1 : 0;
+            for (int i : order) {
+                int t = dfa.next(s, i);
+                code[p++] = t < 0 ? -1 : canonical[t];
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Builds the reachable part of a compiled DFA with its states in
+     * canonical order and its symbols in character order. The states keep
+     * their names.
+     *
+     * @param dfa the compiled automaton
+     * @return the canonically numbered table
+     */
+    static CompactDFA table(CompactDFA dfa) {
+        int k = dfa.symbolCount();
+        int[] order = LanguageAnalysis.sortedSymbols(dfa);
+        int[] canonical = number(dfa, order);
+        int[] queue = states(canonical);
+
+        char[] symbols = new char[k];
+        for (int i = 0; i < k; i++) {
+            symbols[i] = dfa.symbol(order[i]);
+        }
+        String[] names = new String[queue.length];
+        boolean[] finals = new boolean[queue.length];
+        CompactDFA.RowTable rows = new CompactDFA.RowTable(k, queue.length);
+        int[] row = new int[k];
+        for (int j = 0; j < queue.length; j++) {
+            int s = queue[j];
+            names[j] = dfa.stateName(s);
+            finals[j] = dfa.isFinal(s);
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, order[i]);
+                row[i] = t < 0 ? -1 : canonical[t];
+            }
+            rows.add(row);
+        }
+        return rows.build(symbols, names, finals, queue.length == 0 ? -1 : 0);
+    }
+
+    /**
+     * Numbers the states reachable from the start state in breadth-first
+     * order, expanding symbols in the given order.
+     *
+     * @return the canonical number of each state, -1 for unreachable states
+     */
+    private static int[] number(CompactDFA dfa, int[] order) {
+        int n = dfa.stateCount();
+        int[] canonical = new int[n];
+        Arrays.fill(canonical, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        int start = dfa.startState();
+        if (start >= 0) {
+            canonical[start] = tail;
+            queue[tail++] = start;
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int i : order) {
+                int t = dfa.next(s, i);
+                if (t >= 0 && canonical[t] < 0) {
+                    canonical[t] = tail;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Inverts a numbering from number.
+     *
+     * @return the state with each canonical number
+     */
+    private static int[] states(int[] canonical) {
+        int count = 0;
+        for (int c : canonical) {
+            if (c >= 0) count++;
+        }
+        int[] queue = new int[count];
+        for (int s = 0; s < canonical.length; s++) {
+            if (canonical[s] >= 0) queue[canonical[s]] = s;
+        }
+        return queue;
+    }
+
+    /**
+     * Computes the SHA-256 digest of a canonical encoding as a hex string.
+     *
+     * @param code the canonical encoding
+     * @return 64 lowercase hex digits
+     */
+    static String hash(int[] code) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int v : code) {
+            if (!buffer.hasRemaining()) {
+                digest.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putInt(v);
+        }
+        digest.update(buffer.array(), 0, buffer.position());
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,794 @@
+package fa.dfa;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compiled form of a DFA backed by int arrays.
+ * States are numbered in the order they were added to the source DFA and
+ * symbols are numbered in the order they were added to its alphabet.
+ *
+ * Transition rows are hash-consed while compiling: every state points to a
+ * row ID and each distinct row is stored only once in a canonical row table.
+ * Generated automata often contain many states with identical rows (for
+ * example failure states), and those states share a single row. Rows are
+ * deduplicated as they are produced, so the full table is never built.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class CompactDFA implements Matcher {
+
+    /** Alphabet symbols, indexed by symbol index */
+    private final char[] symbols;
+
+    /** Smallest character in the alphabet, the base of symbolIndex */
+    private final char minSymbol;
+
+    /** Maps (c - minSymbol) to the symbol index of c, or -1 if c is not in the alphabet */
+    private final int[] symbolIndex;
+
+    /** State names, indexed by state ID */
+    private final String[] names;
+
+    /** Row ID of each state */
+    private final int[] rowOf;
+
+    /** Canonical row table: the target of row r on symbol i is rows[r * symbols.length + i], or -1 */
+    private final int[] rows;
+
+    /** Number of distinct rows in the canonical table */
+    private final int rowCount;
+
+    /** Final flag of each state */
+    private final boolean[] finals;
+
+    /** ID of the start state, or -1 if none has been set */
+    private final int startState;
+
+    private CompactDFA(char[] symbols, String[] names, int[] rowOf, int[] rows,
+            int rowCount, boolean[] finals, int startState) {
+        this.symbols = symbols;
+        this.names = names;
+        this.rowOf = rowOf;
+        this.rows = rows;
+        this.rowCount = rowCount;
+        this.finals = finals;
+        this.startState = startState;
+
+        char min = Character.MAX_VALUE;
+        char max = Character.MIN_VALUE;
+        for (char c : symbols) {
+            if (c < min) min = c;
+            if (c > max) max = c;
+        }
+        this.minSymbol = symbols.length == 0 ? 0 : min;
+        this.symbolIndex = new int[symbols.length == 0 ? 0 : max - min + 1];
+        Arrays.fill(symbolIndex, -1);
+        for (int i = 0; i < symbols.length; i++) {
+            symbolIndex[symbols[i] - minSymbol] = i;
+        }
+    }
+
+    /**
+     * Compiles a DFA into its compact form, sharing identical rows.
+     *
+     * @param dfa the DFA to compile
+     * @return the compact form of dfa
+     * @throws IllegalArgumentException if the distinct rows need more than
+     *         RowTable.MAX_CELLS cells
+     */
+    static CompactDFA of(DFA dfa) {
+        List<String> stateOrder = dfa.getStateOrder();
+        List<Character> sigmaOrder = dfa.getSigmaOrder();
+        int n = stateOrder.size();
+
+        char[] symbols = new char[sigmaOrder.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = sigmaOrder.get(i);
+        }
+
+        Map<DFAState, Integer> ids = new HashMap<>();
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = stateOrder.get(i);
+            ids.put(dfa.getDFAState(names[i]), i);
+        }
+
+        RowTable table = new RowTable(symbols.length, n);
+        int[] row = new int[symbols.length];
+        boolean[] finals = new boolean[n];
+        for (int s = 0; s < n; s++) {
+            DFAState state = dfa.getDFAState(names[s]);
+            for (int i = 0; i < symbols.length; i++) {
+                DFAState to = state.getTo(symbols[i]);
+                row[i] = to == null ? -1 : ids.get(to);
+            }
+            table.add(row);
+            finals[s] = state.isFinal();
+        }
+
+        DFAState start = dfa.getStartState();
+        return table.build(symbols, names, finals, start == null ? -1 : ids.get(start));
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int stateCount() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of symbols in the alphabet
+     */
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    /**
+     * @param index a symbol index
+     * @return the alphabet symbol with that index
+     */
+    public char symbol(int index) {
+        return symbols[index];
+    }
+
+    /**
+     * Returns the symbol index of a character.
+     *
+     * @param c the input character
+     * @return the symbol index, or -1 if c is not in the alphabet
+     */
+    public int symbolIndex(char c) {
+        int slot = c - minSymbol;
+        if (slot < 0 || slot >= symbolIndex.length) {
+            return -1;
+        }
+        return symbolIndex[slot];
+    }
+
+    /**
+     * @param state a state ID
+     * @return the name of that state
+     */
+    public String stateName(int state) {
+        return names[state];
+    }
+
+    /**
+     * @return the ID of the start state, or -1 if none has been set
+     */
+    public int startState() {
+        return startState;
+    }
+
+    /**
+     * @param state a state ID
+     * @return true if the state is final
+     */
+    public boolean isFinal(int state) {
+        return finals[state];
+    }
+
+    /**
+     * Returns the target of a state on a symbol index.
+     *
+     * @param state the ID of the source state
+     * @param symb the symbol index
+     * @return the ID of the destination state, or -1 if no transition exists
+     */
+    public int next(int state, int symb) {
+        return rows[rowOf[state] * symbols.length + symb];
+    }
+
+    /**
+     * Returns the target of a state on an input character.
+     *
+     * @param state the ID of the source state
+     * @param c the input character
+     * @return the ID of the destination state, or -1 if c is not in the alphabet or no transition exists
+     */
+    public int step(int state, char c) {
+        int symb = symbolIndex(c);
+        return symb < 0 ? -1 : rows[rowOf[state] * symbols.length + symb];
+    }
+
+    /**
+     * @param state a state ID
+     * @return the ID of the canonical row shared by that state
+     */
+    public int rowOf(int state) {
+        return rowOf[state];
+    }
+
+    /**
+     * @return the number of distinct rows stored in the canonical table
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Computes for every state the length of the shortest string leading
+     * from it to a final state.
+     *
+     * @return a new array of distances, -1 for states that cannot reach a
+     *         final state
+     */
+    public int[] distanceToFinal() {
+        return LanguageAnalysis.distanceToFinal(this);
+    }
+
+    /**
+     * Returns the ratio of states to stored rows. A ratio of 1 means
+     * no rows were shared; a ratio of 4 means transition memory is a
+     * quarter of what a full table would need.
+     *
+     * @return the deduplication ratio, or 1 if there are no states
+     */
+    public double dedupRatio() {
+        return rowCount == 0 ? 1.0 : (double) names.length / rowCount;
+    }
+
+    /**
+     * Simulates the automaton on the input. Behaves exactly like DFA.accepts.
+     *
+     * @param s the input string
+     * @return true if s is accepted, false otherwise
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        if (startState < 0) {
+            return false;
+        }
+
+        int k = symbols.length;
+        int current = startState;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            int symb = symbolIndex(s.charAt(i));
+            if (symb < 0) {
+                return false; // Character not in alphabet
+            }
+            current = rows[rowOf[current] * k + symb];
+            if (current < 0) {
+                return false; // No transition defined
+            }
+        }
+        return finals[current];
+    }
+
+    /**
+     * Runs the automaton on the input and records the ID of the state
+     * reached after each symbol: out[i] is the state after reading symbol i.
+     * Nothing is allocated, so tracing can stay enabled on hot paths.
+     *
+     * @param s the input string
+     * @param out receives the state path; must hold at least s.length() entries
+     * @return s.length() if every symbol was read, the index of the first
+     *         symbol that is not in the alphabet or has no transition
+     *         otherwise, or -1 if there is no start state
+     * @throws IllegalArgumentException if out is shorter than s
+     */
+    public int trace(CharSequence s, int[] out) {
+        int n = s.length();
+        if (out.length < n) {
+            throw new IllegalArgumentException("trace buffer holds " + out.length
+                    + " states, input has " + n + " symbols");
+        }
+        if (startState < 0) {
+            return -1;
+        }
+
+        int k = symbols.length;
+        int current = startState;
+        for (int i = 0; i < n; i++) {
+            int symb = symbolIndex(s.charAt(i));
+            if (symb < 0) {
+                return i; // Character not in alphabet
+            }
+            current = rows[rowOf[current] * k + symb];
+            if (current < 0) {
+                return i; // No transition defined
+            }
+            out[i] = current;
+        }
+        return n;
+    }
+
+    /**
+     * Runs the automaton on the input and writes the ID of the state
+     * reached after each symbol into a buffer, starting at its position.
+     * The position is advanced past the recorded states.
+     *
+     * @param s the input string
+     * @param out receives the state path; must have at least s.length() entries remaining
+     * @return s.length() if every symbol was read, the index of the first
+     *         symbol that is not in the alphabet or has no transition
+     *         otherwise, or -1 if there is no start state
+     * @throws IllegalArgumentException if out has fewer entries remaining than s has symbols
+     */
+    public int trace(CharSequence s, IntBuffer out) {
+        int n = s.length();
+        if (out.remaining() < n) {
+            throw new IllegalArgumentException("trace buffer holds " + out.remaining()
+                    + " states, input has " + n + " symbols");
+        }
+        if (startState < 0) {
+            return -1;
+        }
+
+        int k = symbols.length;
+        int base = out.position();
+        int current = startState;
+        for (int i = 0; i < n; i++) {
+            int symb = symbolIndex(s.charAt(i));
+            if (symb < 0) {
+                out.position(base + i);
+                return i; // Character not in alphabet
+            }
+            current = rows[rowOf[current] * k + symb];
+            if (current < 0) {
+                out.position(base + i);
+                return i; // No transition defined
+            }
+            out.put(base + i, current);
+        }
+        out.position(base + n);
+        return n;
+    }
+
+    /*
+     * The with and without methods below return the compact form of the
+     * DFA after a single change, for DFA to keep its compiled form up to
+     * date without walking its states again. This table is left unchanged
+     * and shares every array the change does not touch.
+     */
+
+    /**
+     * Finds a state by name in linear time.
+     *
+     * @return the ID of the state, or -1 if there is none with that name
+     */
+    int stateId(String name) {
+        for (int s = 0; s < names.length; s++) {
+            if (names[s].equals(name)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return this table with the final flag of one state changed
+     */
+    CompactDFA withFinal(int state, boolean isFinal) {
+        if (finals[state] == isFinal) {
+            return this;
+        }
+        boolean[] changed = finals.clone();
+        changed[state] = isFinal;
+        return new CompactDFA(symbols, names, rowOf, rows, rowCount, changed, startState);
+    }
+
+    /**
+     * @return this table with another start state, or none for -1
+     */
+    CompactDFA withStart(int state) {
+        return state == startState ? this
+                : new CompactDFA(symbols, names, rowOf, rows, rowCount, finals, state);
+    }
+
+    /**
+     * Replaces one transition. Only the row of the changed state is
+     * touched: it moves to an existing equal row if there is one, is
+     * patched in place if no other state shares it, and is appended
+     * otherwise; a row that no state uses any more is dropped, so rows
+     * stay distinct and used.
+     *
+     * @param target the new destination, or -1 to remove the transition
+     * @return this table with the transition of state on symb changed
+     */
+    CompactDFA withTransition(int state, int symb, int target) {
+        int k = symbols.length;
+        int old = rowOf[state];
+        if (rows[old * k + symb] == target) {
+            return this;
+        }
+        int[] row = Arrays.copyOfRange(rows, old * k, old * k + k);
+        row[symb] = target;
+
+        int same = -1;
+        for (int r = 0; r < rowCount && same < 0; r++) {
+            if (Arrays.equals(rows, r * k, r * k + k, row, 0, k)) {
+                same = r;
+            }
+        }
+        boolean shared = false;
+        for (int s = 0; s < rowOf.length && !shared; s++) {
+            shared = s != state && rowOf[s] == old;
+        }
+
+        int[] newRowOf = rowOf.clone();
+        int[] newRows;
+        int newCount = rowCount;
+        if (same >= 0 && shared) {
+            newRowOf[state] = same;
+            newRows = rows;
+        } else if (same >= 0) {
+            // the old row is no longer used
+            newRowOf[state] = same;
+            newRows = new int[(rowCount - 1) * k];
+            System.arraycopy(rows, 0, newRows, 0, old * k);
+            System.arraycopy(rows, (old + 1) * k, newRows, old * k, (rowCount - old - 1) * k);
+            for (int s = 0; s < newRowOf.length; s++) {
+                if (newRowOf[s] > old) {
+                    newRowOf[s]--;
+                }
+            }
+            newCount--;
+        } else if (shared) {
+            if ((long) (rowCount + 1) * k > RowTable.MAX_CELLS) {
+                throw new IllegalArgumentException("transition table needs more than "
+                        + RowTable.MAX_CELLS + " cells");
+            }
+            newRows = Arrays.copyOf(rows, (rowCount + 1) * k);
+            System.arraycopy(row, 0, newRows, rowCount * k, k);
+            newRowOf[state] = rowCount;
+            newCount++;
+        } else {
+            newRows = rows.clone();
+            System.arraycopy(row, 0, newRows, old * k, k);
+        }
+        return new CompactDFA(symbols, names, newRowOf, newRows, newCount, finals, startState);
+    }
+
+    /**
+     * @return this table with a new state without transitions as the last state
+     */
+    CompactDFA withState(String name) {
+        int n = names.length;
+        String[] newNames = Arrays.copyOf(names, n + 1);
+        newNames[n] = name;
+        int[] keepState = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            keepState[s] = s;
+        }
+        keepState[n] = -1;
+        return remap(symbols, newNames, keepState, identity(symbols.length), identity(n),
+                Arrays.copyOf(finals, n + 1), startState);
+    }
+
+    /**
+     * @return this table without a state and the transitions into it;
+     *         later states move down by one
+     */
+    CompactDFA withoutState(int state) {
+        int n = names.length;
+        String[] newNames = new String[n - 1];
+        boolean[] newFinals = new boolean[n - 1];
+        int[] keepState = new int[n - 1];
+        int[] newId = new int[n];
+        for (int s = 0, j = 0; s < n; s++) {
+            if (s == state) {
+                newId[s] = -1;
+                continue;
+            }
+            newNames[j] = names[s];
+            newFinals[j] = finals[s];
+            keepState[j] = s;
+            newId[s] = j++;
+        }
+        return remap(symbols, newNames, keepState, identity(symbols.length), newId,
+                newFinals, startState < 0 ? -1 : newId[startState]);
+    }
+
+    /**
+     * @return this table with a new symbol without transitions as the last symbol
+     */
+    CompactDFA withSymbol(char c) {
+        int k = symbols.length;
+        char[] newSymbols = Arrays.copyOf(symbols, k + 1);
+        newSymbols[k] = c;
+        int[] keepSymbol = Arrays.copyOf(identity(k), k + 1);
+        keepSymbol[k] = -1;
+        return remap(newSymbols, names, identity(names.length), keepSymbol,
+                identity(names.length), finals, startState);
+    }
+
+    /**
+     * @return this table without a symbol and its transitions; later
+     *         symbols move down by one
+     */
+    CompactDFA withoutSymbol(int symb) {
+        int k = symbols.length;
+        char[] newSymbols = new char[k - 1];
+        int[] keepSymbol = new int[k - 1];
+        for (int i = 0, j = 0; i < k; i++) {
+            if (i != symb) {
+                newSymbols[j] = symbols[i];
+                keepSymbol[j++] = i;
+            }
+        }
+        return remap(newSymbols, names, identity(names.length), keepSymbol,
+                identity(names.length), finals, startState);
+    }
+
+    private static int[] identity(int length) {
+        int[] ids = new int[length];
+        for (int i = 0; i < length; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * Rebuilds the rows after states or symbols were added or removed,
+     * reading them from this table rather than from the DFA.
+     *
+     * @param keepState the old ID of each new state, or -1 for a state without transitions
+     * @param keepSymbol the old index of each new symbol, or -1 for a symbol without transitions
+     * @param newId the new ID of each old state, or -1 for a removed state
+     */
+    private CompactDFA remap(char[] newSymbols, String[] newNames, int[] keepState,
+            int[] keepSymbol, int[] newId, boolean[] newFinals, int newStart) {
+        RowTable table = new RowTable(newSymbols.length, newNames.length);
+        int[] row = new int[newSymbols.length];
+        for (int s = 0; s < newNames.length; s++) {
+            int old = keepState[s];
+            for (int i = 0; i < row.length; i++) {
+                int t = old < 0 || keepSymbol[i] < 0 ? -1 : next(old, keepSymbol[i]);
+                row[i] = t < 0 ? -1 : newId[t];
+            }
+            table.add(row);
+        }
+        return table.build(newSymbols, newNames, newFinals, newStart);
+    }
+
+    /**
+     * Builds a mutable DFA with the same states, alphabet order, transitions,
+     * final states and start state as this compact form.
+     *
+     * @return a new DFA
+     * @throws IllegalStateException if two states have the same name
+     */
+    public DFA toDFA() {
+        DFA dfa = new DFA();
+        for (char c : symbols) {
+            dfa.addSigma(c);
+        }
+        for (String name : names) {
+            if (!dfa.addState(name)) {
+                throw new IllegalStateException("duplicate state name " + name);
+            }
+        }
+        for (int s = 0; s < names.length; s++) {
+            for (int i = 0; i < symbols.length; i++) {
+                int t = next(s, i);
+                if (t >= 0) {
+                    dfa.addTransition(names[s], names[t], symbols[i]);
+                }
+            }
+            if (finals[s]) {
+                dfa.setFinal(names[s]);
+            }
+        }
+        if (startState >= 0) {
+            dfa.setStart(names[startState]);
+        }
+        return dfa;
+    }
+
+    /**
+     * Writes this compact form, including its shared rows, to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(symbols.length);
+        for (char c : symbols) {
+            out.writeChar(c);
+        }
+        out.writeInt(names.length);
+        for (int s = 0; s < names.length; s++) {
+            out.writeUTF(names[s]);
+            out.writeBoolean(finals[s]);
+            out.writeInt(rowOf[s]);
+        }
+        out.writeInt(startState);
+        out.writeInt(rowCount);
+        for (int cell : rows) {
+            out.writeInt(cell);
+        }
+    }
+
+    /**
+     * Reads a compact form written by writeTo, checking that every index
+     * is in range.
+     *
+     * @param in the stream to read from
+     * @return the compact form
+     * @throws IOException if reading fails or the data is inconsistent
+     */
+    static CompactDFA readFrom(DataInputStream in) throws IOException {
+        int k = in.readInt();
+        if (k < 0 || k > Character.MAX_VALUE + 1) {
+            throw new IOException("bad symbol count: " + k);
+        }
+        char[] symbols = new char[k];
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        for (int i = 0; i < k; i++) {
+            symbols[i] = in.readChar();
+            if (seen[symbols[i]]) {
+                throw new IOException("duplicate symbol: " + symbols[i]);
+            }
+            seen[symbols[i]] = true;
+        }
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("bad state count: " + n);
+        }
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] rowOf = new int[n];
+        for (int s = 0; s < n; s++) {
+            names[s] = in.readUTF();
+            finals[s] = in.readBoolean();
+            rowOf[s] = in.readInt();
+        }
+        int startState = in.readInt();
+        int rowCount = in.readInt();
+        if (startState < -1 || startState >= n || rowCount < 0 || rowCount > n
+                || (long) rowCount * k > RowTable.MAX_CELLS) {
+            throw new IOException("bad start state or row count");
+        }
+        int[] rows = new int[rowCount * k];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = in.readInt();
+            if (rows[i] < -1 || rows[i] >= n) {
+                throw new IOException("bad transition target: " + rows[i]);
+            }
+        }
+        for (int s = 0; s < n; s++) {
+            if (rowOf[s] < 0 || rowOf[s] >= rowCount) {
+                throw new IOException("bad row id: " + rowOf[s]);
+            }
+        }
+        return new CompactDFA(symbols, names, rowOf, rows, rowCount, finals, startState);
+    }
+
+    /**
+     * Collects the transition rows of the states in state ID order and
+     * stores each distinct row once. Rows are found again by open
+     * addressing over row IDs, comparing against the stored cells, so no
+     * per-row objects are allocated.
+     */
+    static final class RowTable {
+
+        /** Largest number of cells in the canonical table, the largest safe array length */
+        static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+        /** Number of symbols, the length of every row */
+        private final int k;
+
+        /** Distinct rows; row r occupies rows[r * k] .. rows[r * k + k - 1] */
+        private int[] rows;
+
+        /** Number of distinct rows */
+        private int rowCount;
+
+        /** Row ID of each state added so far */
+        private int[] rowOf;
+
+        /** Number of states added so far */
+        private int stateCount;
+
+        /** Open addressing table of row IDs, -1 for empty slots */
+        private int[] slots;
+
+        /**
+         * @param symbolCount the length of every row
+         * @param expectedStates the number of states expected, used to size the tables
+         */
+        RowTable(int symbolCount, int expectedStates) {
+            this.k = symbolCount;
+            this.rowOf = new int[Math.max(expectedStates, 1)];
+            this.rows = new int[(int) Math.min((long) Math.min(expectedStates, 1024) * k, MAX_CELLS)];
+            this.slots = new int[64];
+            Arrays.fill(slots, -1);
+        }
+
+        /**
+         * Adds the row of the next state. The row is copied if it is new.
+         *
+         * @param row the targets of the state, indexed by symbol, -1 for none
+         * @return the row ID shared by the state
+         * @throws IllegalArgumentException if the distinct rows would need
+         *         more than MAX_CELLS cells
+         */
+        int add(int[] row) {
+            int mask = slots.length - 1;
+            int h = hash(row) & mask;
+            while (slots[h] >= 0) {
+                if (Arrays.equals(rows, slots[h] * k, slots[h] * k + k, row, 0, k)) {
+                    return append(slots[h]);
+                }
+                h = (h + 1) & mask;
+            }
+
+            int id = rowCount;
+            long cells = (long) (id + 1) * k;
+            if (cells > MAX_CELLS) {
+                throw new IllegalArgumentException("transition table needs more than "
+                        + MAX_CELLS + " cells");
+            }
+            if (cells > rows.length) {
+                rows = Arrays.copyOf(rows, (int) Math.min(Math.max(cells, 2L * rows.length), MAX_CELLS));
+            }
+            System.arraycopy(row, 0, rows, id * k, k);
+            rowCount++;
+            slots[h] = id;
+            if (2 * rowCount > slots.length) {
+                rehash();
+            }
+            return append(id);
+        }
+
+        private int append(int id) {
+            if (stateCount == rowOf.length) {
+                rowOf = Arrays.copyOf(rowOf, 2 * rowOf.length);
+            }
+            rowOf[stateCount++] = id;
+            return id;
+        }
+
+        private int hash(int[] row) {
+            int h = 1;
+            for (int i = 0; i < k; i++) {
+                h = 31 * h + row[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private void rehash() {
+            slots = new int[2 * slots.length];
+            Arrays.fill(slots, -1);
+            int mask = slots.length - 1;
+            int[] row = new int[k];
+            for (int id = 0; id < rowCount; id++) {
+                System.arraycopy(rows, id * k, row, 0, k);
+                int h = hash(row) & mask;
+                while (slots[h] >= 0) {
+                    h = (h + 1) & mask;
+                }
+                slots[h] = id;
+            }
+        }
+
+        /**
+         * Builds the compact DFA from the rows added so far.
+         *
+         * @param symbols the alphabet in symbol index order
+         * @param names the state names in state ID order, one per added row
+         * @param finals the final flag of each state
+         * @param startState the ID of the start state, or -1
+         * @return the compact DFA
+         */
+        CompactDFA build(char[] symbols, String[] names, boolean[] finals, int startState) {
+            if (names.length != stateCount) {
+                throw new IllegalStateException(names.length + " names for " + stateCount + " rows");
+            }
+            int cells = rowCount * k;
+            return new CompactDFA(symbols, names,
+                    rowOf.length == stateCount ? rowOf : Arrays.copyOf(rowOf, stateCount),
+                    rows.length == cells ? rows : Arrays.copyOf(rows, cells),
+                    rowCount, finals, startState);
+        }
+    }
+}
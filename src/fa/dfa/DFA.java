@@ -1,7 +1,10 @@
 package fa.dfa;
 
 import fa.State;
+import java.math.BigInteger;
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 /**
  * CS361 P1 
@@ -13,6 +16,12 @@ import java.util.*;
  */
 public class DFA implements DFAInterface {
     
+    /** Number of transitions from which acceptsAll interleaves inputs with an InterleavedMatcher */
+    static final int INTERLEAVE_MIN_CELLS = 1 << 15;
+    
+    /** Number of changes patched into the cached compiled form before it is compiled afresh */
+    static final int PATCH_LIMIT = 16;
+    
     /** The alphabet (sigma) of the DFA - set of valid input symbols */
     private Set<Character> sigma;
     
@@ -28,12 +37,37 @@ public class DFA implements DFAInterface {
     /** Map for quick state lookup by name */
     private Map<String, DFAState> stateMap;
     
-    /** List to maintain the order in which states were added (for toString formatting) */
-    private List<String> stateOrder;
+    /** Per-symbol edge index: the states that have a transition on each symbol */
+    private Map<Character, Set<DFAState>> sources;
+    
+    /** Set to maintain the order in which states were added (for toString formatting) */
+    private Set<String> stateOrder;
     
     /** List to maintain the order in which alphabet symbols were added (for toString formatting) */
     private List<Character> sigmaOrder;
     
+    /*
+     * The derived forms below are filled in lazily. An unchanged DFA may be
+     * read by several threads at once, for example when it is shared by a
+     * DFARegistry, so each is volatile and only ever assigned a fully built
+     * object. Two threads may both build a form; either result is correct.
+     */
+    
+    /** Lazily compiled form of this DFA, dropped whenever the DFA changes */
+    private volatile CompactDFA compiled;
+    
+    /** Lazily built interleaved matcher for the compiled form, dropped whenever the DFA changes */
+    private volatile InterleavedMatcher interleaved;
+    
+    /** Lazily computed canonical encoding, dropped whenever the DFA changes */
+    private volatile int[] canonical;
+    
+    /** Lazily built backward matcher, dropped whenever the DFA changes */
+    private volatile BackwardMatcher backward;
+    
+    /** Number of changes patched into compiled since it was last compiled afresh */
+    private int patches;
+    
     /**
      * Default constructor that creates an empty DFA.
      * Initializes all data structures but adds no states, symbols, or transitions.
@@ -43,8 +77,9 @@ public class DFA implements DFAInterface {
         this.states = new HashSet<>();
         this.finalStates = new HashSet<>();
         this.stateMap = new HashMap<>();
+        this.sources = new HashMap<>();
         this.startState = null;
-        this.stateOrder = new ArrayList<>();
+        this.stateOrder = new LinkedHashSet<>();
         this.sigmaOrder = new ArrayList<>();
     }
     
@@ -65,6 +100,7 @@ public class DFA implements DFAInterface {
         states.add(state);
         stateMap.put(name, state);
         stateOrder.add(name);
+        update(c -> c.withState(name));
         return true;
     }
     
@@ -84,6 +120,7 @@ public class DFA implements DFAInterface {
         
         state.setFinal(true);
         finalStates.add(state);
+        update(c -> c.withFinal(c.stateId(name), true));
         return true;
     }
     
@@ -109,6 +146,7 @@ public class DFA implements DFAInterface {
         
         state.setStart(true);
         startState = state;
+        update(c -> c.withStart(c.stateId(name)));
         return true;
     }
     
@@ -124,7 +162,93 @@ public class DFA implements DFAInterface {
         if (!sigma.contains(symbol)) {
             sigma.add(symbol);
             sigmaOrder.add(symbol);
+            update(c -> c.withSymbol(symbol));
+        }
+    }
+    
+    /**
+     * Removes a state and every transition into or out of it.
+     * Incoming transitions are found through the reverse-edge index of the
+     * state, so the cost is proportional to the number of removed transitions.
+     * If the state was the start state, the DFA is left without a start state.
+     * 
+     * @param name the name of the state to remove
+     * @return true if the state was removed, false if no such state exists
+     */
+    @Override
+    public boolean removeState(String name) {
+        DFAState state = stateMap.remove(name);
+        if (state == null) {
+            return false;
+        }
+        
+        // Drop transitions into this state
+        for (Map.Entry<Character, Set<DFAState>> entry : state.getIncoming().entrySet()) {
+            for (DFAState from : entry.getValue()) {
+                from.removeTransition(entry.getKey());
+                removeSource(entry.getKey(), from);
+            }
+        }
+        
+        // Drop transitions out of this state
+        for (char c : state.getTransitions().keySet()) {
+            state.removeTransition(c);
+            removeSource(c, state);
+        }
+        
+        if (state == startState) {
+            startState = null;
+        }
+        states.remove(state);
+        finalStates.remove(state);
+        stateOrder.remove(name);
+        update(c -> c.withoutState(c.stateId(name)));
+        return true;
+    }
+    
+    /**
+     * Marks an existing final state as non-accepting.
+     * 
+     * @param name the name of the state
+     * @return true if the state exists, false if no such state exists
+     */
+    @Override
+    public boolean unsetFinal(String name) {
+        DFAState state = stateMap.get(name);
+        if (state == null) {
+            return false;
+        }
+        
+        state.setFinal(false);
+        finalStates.remove(state);
+        update(c -> c.withFinal(c.stateId(name), false));
+        return true;
+    }
+    
+    /**
+     * Removes a symbol from the alphabet together with every transition on it.
+     * The transitions are found through the per-symbol edge index, so the
+     * cost is proportional to the number of removed transitions.
+     * 
+     * @param symbol the character to remove from the alphabet
+     * @return true if the symbol was removed, false if it was not in the alphabet
+     */
+    @Override
+    public boolean removeSigma(char symbol) {
+        if (!sigma.remove(symbol)) {
+            return false;
+        }
+        
+        int index = sigmaOrder.indexOf(symbol);
+        sigmaOrder.remove(index);
+        Set<DFAState> from = sources.remove(symbol);
+        if (from != null) {
+            for (DFAState state : from) {
+                state.removeTransition(symbol);
+            }
         }
+        update(c -> c.withoutSymbol(index));
+        return true;
     }
     
     /**
@@ -225,6 +349,28 @@ public class DFA implements DFAInterface {
         }
         
         from.addTransition(onSymb, to);
+        sources.computeIfAbsent(onSymb, k -> new HashSet<>()).add(from);
+        update(c -> c.withTransition(c.stateId(fromState), sigmaOrder.indexOf(onSymb),
+                c.stateId(toState)));
+        return true;
+    }
+    
+    /**
+     * Removes the transition out of a state on a given symbol.
+     * 
+     * @param fromState the name of the source state
+     * @param onSymb the symbol of the transition
+     * @return true if the transition was removed, false if the state doesn't exist or has no transition on onSymb
+     */
+    @Override
+    public boolean removeTransition(String fromState, char onSymb) {
+        DFAState from = stateMap.get(fromState);
+        if (from == null || from.removeTransition(onSymb) == null) {
+            return false;
+        }
+        
+        removeSource(onSymb, from);
+        update(c -> c.withTransition(c.stateId(fromState), sigmaOrder.indexOf(onSymb), -1));
         return true;
     }
     
@@ -287,7 +433,409 @@ public class DFA implements DFAInterface {
         
         return newDFA;
     }
+
+    /**
+     * Simulates the DFA on the input and records the path of states, for
+     * finding out why a string is rejected. out[i] receives the ID of the
+     * state reached after symbol i, where the ID of a state is its position
+     * in the order states were added (see compile().stateName(id)). Once
+     * the DFA is compiled, tracing allocates nothing.
+     * 
+     * @param s the input string
+     * @param out receives the state path; must hold at least s.length() entries
+     * @return s.length() if every symbol was read, the index of the first
+     *         symbol that is not in the alphabet or has no transition
+     *         otherwise, or -1 if there is no start state
+     */
+    public int trace(CharSequence s, int[] out) {
+        return compiled().trace(s, out);
+    }
+    
+    /**
+     * Simulates the DFA on the input and writes the path of states into a
+     * buffer, starting at its position; see trace(CharSequence, int[]).
+     * 
+     * @param s the input string
+     * @param out receives the state path; its position is advanced past the recorded states
+     * @return s.length() if every symbol was read, the index of the first
+     *         symbol that is not in the alphabet or has no transition
+     *         otherwise, or -1 if there is no start state
+     */
+    public int trace(CharSequence s, IntBuffer out) {
+        return compiled().trace(s, out);
+    }
+    
+    /**
+     * Finds the shortest string accepted by this DFA using breadth-first
+     * search from the start state. Among strings of equal length the one
+     * that comes first in character order is returned.
+     * 
+     * @return the shortest accepted string, or null if the language is empty
+     */
+    public String shortestAccepted() {
+        return LanguageAnalysis.shortestAccepted(compiled());
+    }
     
+    /**
+     * Checks if this DFA accepts no strings at all.
+     * 
+     * @return true if no final state is reachable from the start state
+     */
+    public boolean isEmpty() {
+        return LanguageAnalysis.shortestAccepted(compiled()) == null;
+    }
+    
+    /**
+     * Checks if this DFA accepts finitely many strings. The language is
+     * infinite exactly when a cycle lies on some path from the start state
+     * to a final state.
+     * 
+     * @return true if the language of this DFA is finite
+     */
+    public boolean isFinite() {
+        return LanguageAnalysis.isFinite(compiled());
+    }
+    
+    /**
+     * Lazily enumerates the accepted strings of length at most maxLen in
+     * shortlex order: shorter strings first, strings of equal length in
+     * character order. Strings are generated on demand; the iterator is a
+     * snapshot and does not see later changes to this DFA.
+     * 
+     * @param maxLen the maximum length of the strings to enumerate
+     * @return an iterator over the accepted strings
+     */
+    public Iterator<String> enumerate(int maxLen) {
+        return new LanguageAnalysis.Enumerator(compiled(), maxLen);
+    }
+    
+    /**
+     * Counts the accepted strings of exactly the given length by dynamic
+     * programming over the transition table.
+     * 
+     * @param length the length of the strings to count
+     * @return the number of accepted strings of that length
+     */
+    public BigInteger countAccepted(int length) {
+        return LanguageAnalysis.countAccepted(compiled(), length);
+    }
+    
+    /**
+     * Counts the accepted strings of exactly the given length modulo a
+     * modulus, which avoids big number arithmetic for long lengths.
+     * 
+     * @param length the length of the strings to count
+     * @param modulus the modulus, must be positive
+     * @return the number of accepted strings of that length, modulo modulus
+     */
+    public long countAccepted(int length, long modulus) {
+        return LanguageAnalysis.countAccepted(compiled(), length, modulus);
+    }
+    
+    /**
+     * Compiles this DFA into an immutable table-driven form.
+     * States with identical transition rows share a single stored row,
+     * see CompactDFA.dedupRatio(). Later changes to this DFA are not
+     * reflected in the returned object.
+     *
+     * @return the compact form of this DFA
+     */
+    public CompactDFA compile() {
+        return CompactDFA.of(this);
+    }
+    
+    /**
+     * Compiles this DFA into a table that consumes several symbols per
+     * lookup. The stride is the largest power of two not above maxStride
+     * whose table has at most budget cells; small alphabets such as {0, 1}
+     * allow strides of 4 or 8 with modest tables.
+     * 
+     * @param maxStride the largest number of symbols to consume per lookup
+     * @param budget the largest number of cells allowed in the widest table
+     * @return the strided form of this DFA
+     */
+    public StrideDFA compileStrided(int maxStride, long budget) {
+        return new StrideDFA(compiled(), maxStride, budget);
+    }
+    
+    /**
+     * Generates a matcher class dedicated to this DFA, in which every state
+     * is a switch on the input symbol and finality is a constant. DFAs with
+     * more than MatcherGenerator.DEFAULT_MAX_STATES states, or whose code
+     * would be too large for the JIT, get the table-driven engine instead.
+     * 
+     * @return a matcher that accepts the same strings as this DFA does now
+     */
+    public Matcher specialize() {
+        return MatcherGenerator.generate(compiled(), MatcherGenerator.DEFAULT_MAX_STATES);
+    }
+    
+    /**
+     * Builds the minimal DFA accepting the same language as this one,
+     * using Hopcroft's partition refinement. Unreachable states and states
+     * from which no final state can be reached are left out. Each state of
+     * the result is named after the earliest added state it merges.
+     * 
+     * @return a new minimal DFA; this DFA is unchanged
+     */
+    public DFA minimize() {
+        return Minimizer.minimize(compiled());
+    }
+    
+    /**
+     * Builds a minimal DFA with Brzozowski's algorithm: reversing twice
+     * with the subset construction. It accepts the same language and has
+     * the same states as minimize() up to renaming, but can take
+     * exponential time; it is kept as a second minimizer to check and
+     * benchmark Hopcroft's. States are named after subsets of the state
+     * numbers of the intermediate reversed automaton, as in "[0, 3]".
+     * 
+     * @return a new minimal DFA; this DFA is unchanged
+     */
+    public DFA minimizeBrzozowski() {
+        CompactDFA reversed = Reverser.reverse(compiled(), Integer.MAX_VALUE, false);
+        return Reverser.reverse(reversed, Integer.MAX_VALUE, true).toDFA();
+    }
+    
+    /**
+     * Builds a DFA accepting the reverse of every string this DFA accepts,
+     * by the subset construction over the reverse edges starting from the
+     * set of final states. Each state is named after the set of states of
+     * this DFA it stands for, as in "[a, c]", with the characters of
+     * SubsetName escaped in member names; the empty set is left out, so
+     * the result may be partial.
+     * 
+     * @return a new DFA for the reversed language; this DFA is unchanged
+     */
+    public DFA reverse() {
+        return Reverser.reverse(compiled(), Integer.MAX_VALUE, true).toDFA();
+    }
+    
+    /**
+     * Builds the DFA for the reversed language unless it would have more
+     * than maxStates states, since the subset construction can blow up
+     * exponentially.
+     * 
+     * @param maxStates the largest acceptable number of states
+     * @return a new DFA for the reversed language, or null if it is too large
+     */
+    public DFA reverse(int maxStates) {
+        CompactDFA reversed = Reverser.reverse(compiled(), maxStates, true);
+        return reversed == null ? null : reversed.toDFA();
+    }
+    
+    /**
+     * Returns a matcher that reads inputs from the end and stops as soon as
+     * the outcome is decided, which for suffix-anchored languages is after
+     * a few characters. It is built from the reversed automaton on first
+     * use and rebuilt after this DFA changes.
+     * 
+     * @return a matcher accepting the same strings as this DFA does now
+     */
+    public BackwardMatcher backward() {
+        BackwardMatcher result = backward;
+        if (result == null) {
+            result = new BackwardMatcher(Reverser.reverse(compiled(), Integer.MAX_VALUE, false));
+            backward = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Computes a hash of the structure of this DFA that does not depend on
+     * state names or on the order in which states and symbols were added.
+     * It covers the alphabet and the transitions and final flags of the
+     * states reachable from the start state, visited in breadth-first
+     * order. DFAs with equal hashes are identical up to renaming states.
+     * 
+     * @return the SHA-256 content hash as 64 hex digits
+     */
+    public String contentHash() {
+        return CanonicalForm.hash(canonical());
+    }
+    
+    /**
+     * Returns the canonical encoding of this DFA, computing it if the DFA
+     * has changed since the last call.
+     * 
+     * @return the canonical encoding; must not be modified
+     */
+    int[] canonical() {
+        int[] result = canonical;
+        if (result == null) {
+            result = CanonicalForm.encode(compiled());
+            canonical = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Checks if this DFA accepts exactly the same strings as another DFA
+     * over the same alphabet, by comparing their minimal forms.
+     * 
+     * @param other the DFA to compare with
+     * @return true if both DFAs have the same alphabet and language
+     */
+    public boolean equivalent(DFA other) {
+        return Arrays.equals(minimize().canonical(), other.minimize().canonical());
+    }
+    
+    /**
+     * Compares the structure of two DFAs. Two DFAs are equal when they have
+     * the same alphabet and their parts reachable from the start state are
+     * identical up to renaming of states; state names, insertion order and
+     * unreachable states are ignored. Use equivalent to compare languages.
+     * Since DFAs are mutable, a DFA used as a hash key must not be changed.
+     * 
+     * @param o the object to compare with
+     * @return true if o is a structurally equal DFA
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof DFA && Arrays.equals(canonical(), ((DFA) o).canonical());
+    }
+    
+    /**
+     * Returns a hash code consistent with equals, computed from the
+     * canonical structure of this DFA.
+     * 
+     * @return the structural hash code
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(canonical());
+    }
+    
+    /**
+     * Drops a state from the edge index of a symbol.
+     */
+    private void removeSource(char symbol, DFAState state) {
+        Set<DFAState> from = sources.get(symbol);
+        if (from != null) {
+            from.remove(state);
+            if (from.isEmpty()) {
+                sources.remove(symbol);
+            }
+        }
+    }
+    
+    /**
+     * Brings the derived forms of this DFA up to date after a change. The
+     * compiled form, if there is one, is patched by the given change, which
+     * reuses its rows instead of walking the states again; after
+     * PATCH_LIMIT patches it is dropped and compiled afresh on next use, so
+     * long series of edits do not each pay for a patch. The other derived
+     * forms depend on the whole automaton and are dropped.
+     * 
+     * @param change turns the compiled form before the change into the one after it
+     */
+    private void update(UnaryOperator<CompactDFA> change) {
+        CompactDFA current = compiled;
+        invalidate();
+        if (current != null && patches < PATCH_LIMIT) {
+            patches++;
+            compiled = change.apply(current);
+        }
+    }
+    
+    /**
+     * Drops every derived form of this DFA after a change.
+     */
+    private void invalidate() {
+        compiled = null;
+        interleaved = null;
+        canonical = null;
+        backward = null;
+    }
+    
+    /**
+     * Returns the cached compiled form of this DFA, compiling it first if
+     * the DFA has changed since the last call.
+     * 
+     * @return the compact form of the current DFA
+     */
+    CompactDFA compiled() {
+        CompactDFA result = compiled;
+        if (result == null) {
+            result = CompactDFA.of(this);
+            patches = 0;
+            compiled = result;
+        }
+        return result;
+    }
+
+    /**
+     * Simulates the DFA on many inputs at once. Small tables stay in cache,
+     * so the inputs are simply run one after another on the compiled form.
+     * From INTERLEAVE_MIN_CELLS transitions on, each lookup tends to miss the
+     * cache, and the inputs are advanced in interleaved blocks by an
+     * InterleavedMatcher so that the misses overlap.
+     * 
+     * @param inputs the input strings
+     * @return an array holding accepts(inputs[i]) at position i
+     */
+    public boolean[] acceptsAll(CharSequence... inputs) {
+        CompactDFA table = compiled();
+        boolean[] results = new boolean[inputs.length];
+        if ((long) table.stateCount() * table.symbolCount() < INTERLEAVE_MIN_CELLS) {
+            for (int i = 0; i < inputs.length; i++) {
+                results[i] = table.accepts(inputs[i]);
+            }
+            return results;
+        }
+        InterleavedMatcher matcher = interleaved;
+        if (matcher == null) {
+            matcher = new InterleavedMatcher(table);
+            interleaved = matcher;
+        }
+        matcher.accepts(inputs, results);
+        return results;
+    }
+    
+    /**
+     * Returns the state names in the order they were added.
+     * The position of a name in this list is the integer state ID
+     * used by the compiled representations of this DFA.
+     *
+     * @return an unmodifiable snapshot of the state order; later changes to
+     *         this DFA are not reflected in it
+     */
+    List<String> getStateOrder() {
+        return Collections.unmodifiableList(new ArrayList<>(stateOrder));
+    }
+
+    /**
+     * Returns the alphabet symbols in the order they were added.
+     * The position of a symbol in this list is its integer symbol index.
+     *
+     * @return an unmodifiable view of the alphabet order
+     */
+    List<Character> getSigmaOrder() {
+        return Collections.unmodifiableList(sigmaOrder);
+    }
+
+    /**
+     * Returns the concrete state object with the given name.
+     *
+     * @param name the name of the state
+     * @return the DFAState, or null if no such state exists
+     */
+    DFAState getDFAState(String name) {
+        return stateMap.get(name);
+    }
+
+    /**
+     * Returns the start state of this DFA.
+     *
+     * @return the start state, or null if none has been set
+     */
+    DFAState getStartState() {
+        return startState;
+    }
+
     /**
      * Creates a textual representation of the DFA in standard format.
      * The format includes:
@@ -305,9 +853,11 @@ public class DFA implements DFAInterface {
         
         // Q = { states }
         sb.append("Q = { ");
-        for (int i = 0; i < stateOrder.size(); i++) {
-            if (i > 0) sb.append(" ");
-            sb.append(stateOrder.get(i));
+        boolean firstState = true;
+        for (String stateName : stateOrder) {
+            if (!firstState) sb.append(" ");
+            sb.append(stateName);
+            firstState = false;
         }
         sb.append(" }\n");
         
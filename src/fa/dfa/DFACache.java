@@ -0,0 +1,376 @@
+package fa.dfa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of compiled artifacts, so that a restarted process can load
+ * compiled tables and minimized automata instead of recomputing them.
+ *
+ * Compiled tables are stored under the content hash of the DFA they were
+ * compiled from, renumbered canonically: the reachable states in the
+ * breadth-first order of CanonicalForm and the symbols in character
+ * order. All DFAs with the same content hash therefore share one entry.
+ * storeCompiled returns the hash, and a later process that kept it can
+ * load the table with compiled(String) without building the DFA at all;
+ * computing the hash needs a compile, so there is no lookup by DFA.
+ *
+ * Minimized automata are stored under a SHA-256 digest of the exact
+ * structure of the DFA: the alphabet in the order it was added, every
+ * state name in the order the states were added, including unreachable
+ * states, the start state, the final flags and all transitions. The key
+ * is computed in one pass over the states, much cheaper than minimizing,
+ * and a hit is equal to what minimize() would have returned, state names
+ * included.
+ *
+ * Each entry is one file named after the key and the kind of artifact.
+ * Files are written to a temporary file and atomically moved into place,
+ * so readers never see a partial entry. Every file carries a magic number,
+ * a format version and a CRC32 of its payload; an entry that fails these
+ * checks is deleted and treated as a miss. Reading an entry refreshes its
+ * modification time, and when the directory grows past its size limit the
+ * least recently used entries are evicted.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class DFACache {
+
+    /** "DFAC" */
+    private static final int MAGIC = 0x44464143;
+
+    /** Format version of cache entries */
+    private static final int VERSION = 2;
+
+    /** File name suffix of cache entries */
+    private static final String SUFFIX = ".dfac";
+
+    /** Kind of an entry holding a canonically numbered compiled table */
+    private static final String COMPILED = "compiled";
+
+    /** Kind of an entry holding the minimized automaton */
+    private static final String MINIMIZED = "minimized";
+
+    /** Directory holding the entries */
+    private final Path directory;
+
+    /** Largest total size of all entries, in bytes */
+    private final long maxBytes;
+
+    /**
+     * Opens a cache directory, creating it if necessary.
+     *
+     * @param directory the directory holding the entries
+     * @param maxBytes the largest total size of all entries, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public DFACache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Stores the compiled form of a DFA, renumbered canonically, under its
+     * content hash. Nothing is written if an entry for the hash exists.
+     *
+     * @param dfa the DFA
+     * @return the content hash of dfa, the key for compiled(String)
+     * @throws IOException if the cache directory cannot be written
+     */
+    public String storeCompiled(DFA dfa) throws IOException {
+        String hash = dfa.contentHash();
+        Path file = path(hash, COMPILED);
+        if (Files.exists(file)) {
+            touch(file);
+        } else {
+            store(hash, COMPILED, CanonicalForm.table(dfa.compiled()));
+        }
+        return hash;
+    }
+
+    /**
+     * Loads a compiled table stored by storeCompiled. The table holds the
+     * reachable states of the stored DFA in canonical order, named as in
+     * that DFA, with the symbols in character order; it is identical up to
+     * renaming of states to every DFA with this content hash.
+     *
+     * @param contentHash a content hash returned by storeCompiled or DFA.contentHash
+     * @return the table, or null if the cache has no valid entry for the hash
+     * @throws IOException if a corrupt entry cannot be deleted
+     * @throws IllegalArgumentException if contentHash is not 64 lowercase hex digits
+     */
+    public CompactDFA compiled(String contentHash) throws IOException {
+        if (!contentHash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("not a content hash: " + contentHash);
+        }
+        return load(contentHash, COMPILED);
+    }
+
+    /**
+     * Returns the minimized form of a DFA, loading it from the cache if an
+     * entry for the DFA exists and minimizing and storing it otherwise.
+     * The result is equal to dfa.minimize(), state names included.
+     *
+     * @param dfa the DFA
+     * @return a new minimal DFA equivalent to dfa
+     * @throws IOException if the cache directory cannot be written
+     */
+    public DFA minimized(DFA dfa) throws IOException {
+        String hash = key(dfa);
+        CompactDFA cached = load(hash, MINIMIZED);
+        if (cached != null) {
+            return cached.toDFA();
+        }
+        DFA minimal = dfa.minimize();
+        store(hash, MINIMIZED, minimal.compile());
+        return minimal;
+    }
+
+    /**
+     * @return the total size of all entries, in bytes
+     * @throws IOException if the directory cannot be listed
+     */
+    public long size() throws IOException {
+        long total = 0;
+        for (Path entry : entries()) {
+            total += sizeOf(entry);
+        }
+        return total;
+    }
+
+    /**
+     * Computes the cache key of a DFA from its states and transitions.
+     *
+     * @return 64 lowercase hex digits
+     */
+    static String key(DFA dfa) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+
+        List<Character> sigmaOrder = dfa.getSigmaOrder();
+        List<String> names = dfa.getStateOrder();
+        char[] symbols = new char[sigmaOrder.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = sigmaOrder.get(i);
+        }
+        DFAState[] states = new DFAState[names.size()];
+        Map<DFAState, Integer> ids = new IdentityHashMap<>();
+        for (int s = 0; s < states.length; s++) {
+            states[s] = dfa.getDFAState(names.get(s));
+            ids.put(states[s], s);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        putInt(digest, buffer, symbols.length);
+        for (char c : symbols) {
+            putInt(digest, buffer, c);
+        }
+        putInt(digest, buffer, states.length);
+        for (String name : names) {
+            putInt(digest, buffer, name.length());
+            for (int i = 0; i < name.length(); i++) {
+                putInt(digest, buffer, name.charAt(i));
+            }
+        }
+        DFAState start = dfa.getStartState();
+        putInt(digest, buffer, start == null ? -1 : ids.get(start));
+        for (DFAState state : states) {
+            putInt(digest, buffer, state.isFinal() ? 1 : 0);
+            for (char c : symbols) {
+                DFAState to = state.getTo(c);
+                putInt(digest, buffer, to == null ? -1 : ids.get(to));
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends an int to the key, passing the buffer to the digest when full.
+     */
+    private static void putInt(MessageDigest digest, ByteBuffer buffer, int value) {
+        if (buffer.remaining() < Integer.BYTES) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        buffer.putInt(value);
+    }
+
+    private Path path(String hash, String kind) {
+        return directory.resolve(hash + "." + kind + SUFFIX);
+    }
+
+    /**
+     * Reads and verifies an entry.
+     *
+     * @return the stored table, or null if there is no valid entry
+     */
+    private CompactDFA load(String hash, String kind) throws IOException {
+        Path file = path(hash, kind);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(hash) || !in.readUTF().equals(kind)) {
+                throw new IOException("bad header");
+            }
+            int length = in.readInt();
+            if (length < 0 || length > in.available() - Long.BYTES) {
+                throw new IOException("bad payload length");
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+            CompactDFA compact = CompactDFA.readFrom(
+                    new DataInputStream(new ByteArrayInputStream(payload)));
+            touch(file);
+            return compact;
+        } catch (IOException e) {
+            // Corrupt or truncated entry: drop it and recompute
+            Files.deleteIfExists(file);
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry atomically and evicts old entries if the cache is
+     * over its size limit.
+     */
+    private void store(String hash, String kind, CompactDFA compact) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            compact.writeTo(out);
+        }
+        byte[] body = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(body.length + 128);
+        try (DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(hash);
+            out.writeUTF(kind);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeLong(crc.getValue());
+        }
+
+        Path target = path(hash, kind);
+        Path temp = Files.createTempFile(directory, hash, ".tmp");
+        try {
+            Files.write(temp, file.toByteArray());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its limit.
+     */
+    private void evict() throws IOException {
+        List<Path> entries = entries();
+        long total = 0;
+        List<long[]> stats = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            long size = sizeOf(entries.get(i));
+            total += size;
+            stats.add(new long[] {lastUsed(entries.get(i)), size, i});
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        stats.sort(Comparator.comparingLong(s -> s[0]));
+        for (long[] stat : stats) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entries.get((int) stat[2]));
+            total -= stat[1];
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Size of an entry, or 0 if another process removed it meanwhile.
+     */
+    private static long sizeOf(Path entry) throws IOException {
+        try {
+            return Files.size(entry);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private static long lastUsed(Path entry) throws IOException {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (NoSuchFileException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static void touch(Path entry) throws IOException {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Evicted by another process; the loaded copy is still valid
+        }
+    }
+}
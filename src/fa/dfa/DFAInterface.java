@@ -34,6 +34,15 @@ public interface DFAInterface extends FAInterface{
 	public  boolean addTransition(String fromState, String toState, char onSymb);
 	
 	
+	/**
+	 * Removes the transition out of a state on a symbol
+	 * @param fromState is the label of the state where the transition starts
+	 * @param onSymb is the symbol from the DFA's alphabet.
+	 * @return true if successful and false if the state doesn't exist or has no transition on the symbol
+	 */
+	public boolean removeTransition(String fromState, char onSymb);
+	
+	
 	
 	/**
 	 * Creates a deep copy of this DFA
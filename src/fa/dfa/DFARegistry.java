@@ -0,0 +1,140 @@
+package fa.dfa;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe registry that interns DFAs, so that callers with identical
+ * rules share a single automaton in memory. Interning keys on the canonical
+ * encoding of a DFA, either of its structure as built or of its minimal
+ * form, which also merges DFAs that differ in structure but accept the
+ * same language.
+ *
+ * Interned DFAs are shared and must be treated as read-only.
+ *
+ * The registry holds its DFAs weakly: once no caller refers to a shared
+ * DFA any more, the garbage collector may reclaim it and its entry is
+ * dropped, so a long-running process does not accumulate every automaton
+ * it has ever interned. A DFA interned again after that is registered anew.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class DFARegistry {
+
+    /**
+     * Which DFAs the registry considers the same.
+     */
+    public enum Mode {
+        /** DFAs that are equal as built, up to renaming of states */
+        STRUCTURAL,
+        /** DFAs that accept the same language over the same alphabet */
+        LANGUAGE
+    }
+
+    /** How keys are computed */
+    private final Mode mode;
+
+    /** Shared DFAs, keyed by canonical encoding */
+    private final ConcurrentMap<Key, Entry> shared = new ConcurrentHashMap<>();
+
+    /** Entries whose DFA has been reclaimed, to be removed from shared */
+    private final ReferenceQueue<DFA> reclaimed = new ReferenceQueue<>();
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param mode which DFAs to treat as the same
+     */
+    public DFARegistry(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the shared DFA equal to dfa under this registry's mode,
+     * registering dfa itself if there is none yet. In LANGUAGE mode the
+     * registered DFA is the minimal form of dfa.
+     *
+     * @param dfa the DFA to intern
+     * @return the shared DFA
+     */
+    public DFA intern(DFA dfa) {
+        expunge();
+        DFA candidate = mode == Mode.LANGUAGE ? dfa.minimize() : dfa;
+        Key key = new Key(candidate.canonical().clone());
+        Entry entry = new Entry(key, candidate, reclaimed);
+        while (true) {
+            Entry existing = shared.putIfAbsent(key, entry);
+            if (existing == null) {
+                return candidate;
+            }
+            DFA live = existing.get();
+            if (live != null) {
+                return live;
+            }
+            //the shared DFA was reclaimed but its entry not yet dropped
+            if (shared.replace(key, existing, entry)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct DFAs in the registry that have not
+     *         been reclaimed
+     */
+    public int size() {
+        expunge();
+        return shared.size();
+    }
+
+    /**
+     * Drops the entries of reclaimed DFAs. An entry that has already been
+     * replaced by a newer one for the same key is left alone.
+     */
+    private void expunge() {
+        Entry entry;
+        while ((entry = (Entry) reclaimed.poll()) != null) {
+            shared.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Weak reference to a shared DFA that remembers its key, so that the
+     * entry can be found and removed once the DFA is reclaimed.
+     */
+    private static final class Entry extends WeakReference<DFA> {
+        private final Key key;
+
+        Entry(Key key, DFA dfa, ReferenceQueue<DFA> queue) {
+            super(dfa, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Hash key wrapping a canonical encoding, compared by content.
+     * The encoding is copied, so later changes to a DFA cannot corrupt the map.
+     */
+    private static final class Key {
+        private final int[] code;
+        private final int hash;
+
+        Key(int[] code) {
+            this.code = code;
+            this.hash = Arrays.hashCode(code);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(code, ((Key) o).code);
+        }
+    }
+}
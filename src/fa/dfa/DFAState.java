@@ -2,28 +2,87 @@ package fa.dfa;
 
 import fa.State;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class DFAState extends State {
     
     private boolean isFinal;
     private boolean isStart;
     private Map<Character, DFAState> transitions;
+    /** Reverse-edge index: for each symbol, the states that move to this state on it */
+    private Map<Character, Set<DFAState>> incoming;
     
     public DFAState(String name) {
         super(name);
         this.isFinal = false;
         this.isStart = false;
         this.transitions = new HashMap<>();
+        this.incoming = new HashMap<>();
     }
     
     /**
-     * Add a transition from this state to another state on a given symbol
+     * Add a transition from this state to another state on a given symbol.
+     * Replaces any existing transition on that symbol and keeps the
+     * reverse-edge index of both destination states up to date.
      * @param onSymb the symbol that triggers the transition
      * @param toState the destination state
      */
     public void addTransition(char onSymb, DFAState toState) {
-        transitions.put(onSymb, toState);
+        DFAState old = transitions.put(onSymb, toState);
+        if (old != null) {
+            old.removeIncoming(onSymb, this);
+        }
+        toState.incoming.computeIfAbsent(onSymb, k -> new HashSet<>()).add(this);
+    }
+    
+    /**
+     * Remove the transition from this state on a given symbol
+     * @param onSymb the symbol of the transition
+     * @return the former destination state, or null if no transition existed
+     */
+    public DFAState removeTransition(char onSymb) {
+        DFAState old = transitions.remove(onSymb);
+        if (old != null) {
+            old.removeIncoming(onSymb, this);
+        }
+        return old;
+    }
+    
+    /**
+     * Drop a single entry from the reverse-edge index of this state
+     */
+    private void removeIncoming(char onSymb, DFAState fromState) {
+        Set<DFAState> from = incoming.get(onSymb);
+        if (from != null) {
+            from.remove(fromState);
+            if (from.isEmpty()) {
+                incoming.remove(onSymb);
+            }
+        }
+    }
+    
+    /**
+     * Get the states that move to this state on a given symbol
+     * @param symb the input symbol
+     * @return a copy of the set of source states, empty if there are none
+     */
+    public Set<DFAState> getFrom(char symb) {
+        Set<DFAState> from = incoming.get(symb);
+        return from == null ? new HashSet<>() : new HashSet<>(from);
+    }
+    
+    /**
+     * Get all incoming transitions of this state
+     * @return map of symbol to the set of source states
+     */
+    public Map<Character, Set<DFAState>> getIncoming() {
+        Map<Character, Set<DFAState>> copy = new HashMap<>();
+        for (Map.Entry<Character, Set<DFAState>> entry : incoming.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return copy;
     }
     
     /**
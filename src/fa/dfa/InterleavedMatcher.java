@@ -0,0 +1,162 @@
+package fa.dfa;
+
+import java.util.Arrays;
+
+/**
+ * Checks many inputs against the same DFA by advancing a block of inputs
+ * in lock step. A single accepts call is a chain of dependent table
+ * lookups; interleaving LANES independent chains lets the processor
+ * overlap their memory accesses.
+ *
+ * The transition table is padded so that the inner loop never branches on
+ * the automaton: an extra dead state absorbs missing transitions, one extra
+ * column sends characters outside the alphabet to the dead state, and
+ * another column keeps a lane in place once its input is used up. Lanes
+ * that are finished or dead are therefore masked out by the table itself.
+ *
+ * The lanes are advanced by plain scalar loads, not a SIMD gather, so
+ * nothing is gained while the table fits in cache; on small tables the
+ * extra bookkeeping makes it slower than running the inputs one by one.
+ * DFA.acceptsAll therefore uses it for large automata only.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class InterleavedMatcher {
+
+    /** Number of inputs advanced together */
+    public static final int LANES = 16;
+
+    /** How many steps to take between checks for a block that has settled */
+    private static final int SETTLE_CHECK = 32;
+
+    /** Number of columns in the padded table: the alphabet plus the reject and stay columns */
+    private final int width;
+
+    /** Column for characters that are not in the alphabet */
+    private final int rejectColumn;
+
+    /** Column used by lanes whose input has ended */
+    private final int stayColumn;
+
+    /** ID of the dead state */
+    private final int dead;
+
+    /** Padded transition table: the target of state s on column c is table[s * width + c] */
+    private final int[] table;
+
+    /** Final flag of each state, including the dead state */
+    private final boolean[] finals;
+
+    /** Smallest character in the alphabet, the base of columnOf */
+    private final char minSymbol;
+
+    /** Maps (c - minSymbol) to the column of c */
+    private final int[] columnOf;
+
+    /** ID of the start state, or -1 if none has been set */
+    private final int startState;
+
+    /**
+     * Builds an interleaved matcher for a compiled DFA.
+     *
+     * @param dfa the compiled automaton
+     */
+    public InterleavedMatcher(CompactDFA dfa) {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        this.width = k + 2;
+        this.rejectColumn = k;
+        this.stayColumn = k + 1;
+        this.dead = n;
+        this.startState = dfa.startState();
+
+        this.table = new int[(n + 1) * width];
+        this.finals = new boolean[n + 1];
+        for (int s = 0; s <= n; s++) {
+            for (int i = 0; i < k; i++) {
+                int t = s == n ? -1 : dfa.next(s, i);
+                table[s * width + i] = t < 0 ? dead : t;
+            }
+            table[s * width + rejectColumn] = dead;
+            table[s * width + stayColumn] = s;
+            finals[s] = s < n && dfa.isFinal(s);
+        }
+
+        char min = Character.MAX_VALUE;
+        char max = Character.MIN_VALUE;
+        for (int i = 0; i < k; i++) {
+            char c = dfa.symbol(i);
+            if (c < min) min = c;
+            if (c > max) max = c;
+        }
+        this.minSymbol = k == 0 ? 0 : min;
+        this.columnOf = new int[k == 0 ? 0 : max - min + 1];
+        Arrays.fill(columnOf, rejectColumn);
+        for (int i = 0; i < k; i++) {
+            columnOf[dfa.symbol(i) - minSymbol] = i;
+        }
+    }
+
+    /**
+     * Returns the table column for an input character.
+     */
+    private int column(char c) {
+        int slot = c - minSymbol;
+        return slot < 0 || slot >= columnOf.length ? rejectColumn : columnOf[slot];
+    }
+
+    /**
+     * Simulates the automaton on every input. results[i] is set to the
+     * value DFA.accepts would return for inputs[i].
+     *
+     * @param inputs the input strings
+     * @param results receives one result per input, must be at least as long as inputs
+     */
+    public void accepts(CharSequence[] inputs, boolean[] results) {
+        if (results.length < inputs.length) {
+            throw new IllegalArgumentException("results is shorter than inputs");
+        }
+        if (startState < 0) {
+            Arrays.fill(results, 0, inputs.length, false);
+            return;
+        }
+
+        int[] state = new int[LANES];
+        int[] length = new int[LANES];
+        for (int base = 0; base < inputs.length; base += LANES) {
+            int lanes = Math.min(LANES, inputs.length - base);
+            int longest = 0;
+            for (int l = 0; l < lanes; l++) {
+                state[l] = startState;
+                length[l] = inputs[base + l].length();
+                longest = Math.max(longest, length[l]);
+            }
+
+            for (int t = 0; t < longest; t++) {
+                for (int l = 0; l < lanes; l++) {
+                    int col = t < length[l] ? column(inputs[base + l].charAt(t)) : stayColumn;
+                    state[l] = table[state[l] * width + col];
+                }
+                if ((t + 1) % SETTLE_CHECK == 0 && settled(state, length, lanes, t + 1)) {
+                    break;
+                }
+            }
+
+            for (int l = 0; l < lanes; l++) {
+                results[base + l] = finals[state[l]];
+            }
+        }
+    }
+
+    /**
+     * Checks whether every lane in a block is either dead or finished.
+     */
+    private boolean settled(int[] state, int[] length, int lanes, int steps) {
+        for (int l = 0; l < lanes; l++) {
+            if (state[l] != dead && length[l] > steps) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
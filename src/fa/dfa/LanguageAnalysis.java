@@ -0,0 +1,511 @@
+package fa.dfa;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Questions about the language of a compiled DFA: emptiness, finiteness,
+ * shortest member, enumeration and counting. Every algorithm here runs in
+ * time polynomial in the number of states and the requested length; no set
+ * of strings is ever materialized.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+final class LanguageAnalysis {
+
+    private LanguageAnalysis() {
+    }
+
+    /**
+     * Returns symbol indices sorted by character value, so that searches
+     * which expand symbols in this order visit strings in shortlex order.
+     */
+    static int[] sortedSymbols(CompactDFA dfa) {
+        Integer[] boxed = new Integer[dfa.symbolCount()];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> Character.compare(dfa.symbol(a), dfa.symbol(b)));
+        int[] order = new int[boxed.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Builds the reverse edges of the DFA in compressed form: the sources
+     * of the edges into state t are from[offset[t]] .. from[offset[t + 1] - 1].
+     *
+     * @return {offset, from}
+     */
+    static int[][] reverseEdges(CompactDFA dfa) {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        int[] offset = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0) {
+                    offset[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < n; t++) {
+            offset[t + 1] += offset[t];
+        }
+        int[] fill = Arrays.copyOf(offset, n);
+        int[] from = new int[offset[n]];
+        for (int s = 0; s < n; s++) {
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0) {
+                    from[fill[t]++] = s;
+                }
+            }
+        }
+        return new int[][] {offset, from};
+    }
+
+    /**
+     * Computes for every state the length of the shortest string leading
+     * from it to a final state, by BFS over the reverse edges.
+     *
+     * @return the distances, -1 for states that cannot reach a final state
+     */
+    static int[] distanceToFinal(CompactDFA dfa) {
+        int n = dfa.stateCount();
+        int[][] reverse = reverseEdges(dfa);
+        int[] offset = reverse[0];
+        int[] from = reverse[1];
+        int[] dist = new int[n];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < n; s++) {
+            if (dfa.isFinal(s)) {
+                dist[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int t = queue[head++];
+            for (int e = offset[t]; e < offset[t + 1]; e++) {
+                int s = from[e];
+                if (dist[s] < 0) {
+                    dist[s] = dist[t] + 1;
+                    queue[tail++] = s;
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Marks the states reachable from the start state.
+     */
+    static boolean[] reachable(CompactDFA dfa) {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        boolean[] seen = new boolean[n];
+        if (dfa.startState() < 0) {
+            return seen;
+        }
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        seen[dfa.startState()] = true;
+        queue[tail++] = dfa.startState();
+        while (head < tail) {
+            int s = queue[head++];
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0 && !seen[t]) {
+                    seen[t] = true;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Finds the shortlex-smallest accepted string by BFS from the start
+     * state, expanding symbols in character order.
+     *
+     * @return the string, or null if the language is empty
+     */
+    static String shortestAccepted(CompactDFA dfa) {
+        int start = dfa.startState();
+        if (start < 0) {
+            return null;
+        }
+        int n = dfa.stateCount();
+        int[] order = sortedSymbols(dfa);
+        int[] parent = new int[n];
+        int[] via = new int[n];
+        Arrays.fill(parent, -2);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        parent[start] = -1;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int s = queue[head++];
+            if (dfa.isFinal(s)) {
+                StringBuilder sb = new StringBuilder();
+                for (int t = s; parent[t] >= 0; t = parent[t]) {
+                    sb.append(dfa.symbol(via[t]));
+                }
+                return sb.reverse().toString();
+            }
+            for (int i : order) {
+                int t = dfa.next(s, i);
+                if (t >= 0 && parent[t] == -2) {
+                    parent[t] = s;
+                    via[t] = i;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decides whether the language is finite: it is infinite exactly when
+     * some cycle lies on a path from the start state to a final state.
+     */
+    static boolean isFinite(CompactDFA dfa) {
+        return longestAccepted(dfa) < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Finds the length of the longest accepted string. Uses Kahn's
+     * algorithm on the subgraph of useful states, which is acyclic exactly
+     * when the language is finite, and takes longest paths in that order.
+     *
+     * @return the length, -1 if the language is empty, or
+     *         Integer.MAX_VALUE if the language is infinite
+     */
+    static int longestAccepted(CompactDFA dfa) {
+        int start = dfa.startState();
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        boolean[] reach = reachable(dfa);
+        int[] dist = distanceToFinal(dfa);
+        boolean[] useful = new boolean[n];
+        int usefulCount = 0;
+        for (int s = 0; s < n; s++) {
+            useful[s] = reach[s] && dist[s] >= 0;
+            if (useful[s]) usefulCount++;
+        }
+
+        int[] indegree = new int[n];
+        for (int s = 0; s < n; s++) {
+            if (!useful[s]) continue;
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0 && useful[t]) {
+                    indegree[t]++;
+                }
+            }
+        }
+
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < n; s++) {
+            if (useful[s] && indegree[s] == 0) {
+                queue[tail++] = s;
+            }
+        }
+        // Every useful state is reachable, so the only source is the start state
+        int[] longest = new int[n];
+        int result = -1;
+        while (head < tail) {
+            int s = queue[head++];
+            if (dfa.isFinal(s)) {
+                result = Math.max(result, longest[s]);
+            }
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0 && useful[t]) {
+                    longest[t] = Math.max(longest[t], longest[s] + 1);
+                    if (--indegree[t] == 0) {
+                        queue[tail++] = t;
+                    }
+                }
+            }
+        }
+        // Every useful state was removed iff the useful subgraph is acyclic
+        if (tail < usefulCount) {
+            return Integer.MAX_VALUE;
+        }
+        return start < 0 ? -1 : result;
+    }
+
+    /**
+     * Counts the accepted strings of exactly the given length with the
+     * recurrence count_{r+1}(s) = sum over symbols of count_r(next(s, a)).
+     */
+    static BigInteger countAccepted(CompactDFA dfa, int length) {
+        int start = dfa.startState();
+        if (start < 0 || length < 0) {
+            return BigInteger.ZERO;
+        }
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        int[] useful = usefulStates(dfa);
+
+        BigInteger[] count = new BigInteger[n];
+        BigInteger[] next = new BigInteger[n];
+        Arrays.fill(count, BigInteger.ZERO);
+        Arrays.fill(next, BigInteger.ZERO);
+        for (int s : useful) {
+            count[s] = dfa.isFinal(s) ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        for (int r = 0; r < length; r++) {
+            for (int s : useful) {
+                BigInteger sum = BigInteger.ZERO;
+                for (int i = 0; i < k; i++) {
+                    int t = dfa.next(s, i);
+                    if (t >= 0) {
+                        sum = sum.add(count[t]);
+                    }
+                }
+                next[s] = sum;
+            }
+            BigInteger[] swap = count;
+            count = next;
+            next = swap;
+        }
+        return count[start];
+    }
+
+    /**
+     * Counts the accepted strings of exactly the given length modulo m.
+     */
+    static long countAccepted(CompactDFA dfa, int length, long modulus) {
+        if (modulus <= 0) {
+            throw new IllegalArgumentException("modulus must be positive: " + modulus);
+        }
+        int start = dfa.startState();
+        if (start < 0 || length < 0) {
+            return 0;
+        }
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        int[] useful = usefulStates(dfa);
+
+        long[] count = new long[n];
+        long[] next = new long[n];
+        for (int s : useful) {
+            count[s] = dfa.isFinal(s) ? 1 % modulus : 0;
+        }
+        for (int r = 0; r < length; r++) {
+            for (int s : useful) {
+                long sum = 0;
+                for (int i = 0; i < k; i++) {
+                    int t = dfa.next(s, i);
+                    if (t >= 0) {
+                        sum += count[t];
+                        if (sum >= modulus) sum -= modulus;
+                    }
+                }
+                next[s] = sum;
+            }
+            long[] swap = count;
+            count = next;
+            next = swap;
+        }
+        return count[start];
+    }
+
+    /**
+     * Lists the states that are reachable from the start state and can
+     * reach a final state; all other states contribute nothing to counts.
+     */
+    private static int[] usefulStates(CompactDFA dfa) {
+        int n = dfa.stateCount();
+        boolean[] reach = reachable(dfa);
+        int[] dist = distanceToFinal(dfa);
+        int[] useful = new int[n];
+        int size = 0;
+        for (int s = 0; s < n; s++) {
+            if (reach[s] && dist[s] >= 0) {
+                useful[size++] = s;
+            }
+        }
+        return Arrays.copyOf(useful, size);
+    }
+
+    /**
+     * Lazily enumerates accepted strings of length at most maxLen in
+     * shortlex order.
+     *
+     * For each length L a depth-first search expands symbols in character
+     * order. Branches are cut when the state is further from a final state
+     * than the remaining length allows, and every (state, remaining length)
+     * pair found to have no accepted completion is remembered, so each pair
+     * is explored at most once over the whole enumeration.
+     */
+    static final class Enumerator implements Iterator<String> {
+
+        private final CompactDFA dfa;
+
+        /** The requested bound, lowered to the longest accepted length */
+        private final int maxLen;
+        private final int[] order;
+        private final int[] dist;
+
+        /**
+         * States known to have no accepted completion: bit s of
+         * dead[remaining] is set when state s cannot reach a final state in
+         * exactly remaining steps. Rows are allocated when first marked.
+         */
+        private long[][] dead;
+
+        /** Length currently being enumerated */
+        private int length;
+
+        /** Whether the search for the current length has been set up */
+        private boolean started;
+
+        /** Current search depth, the state at each depth and the next symbol to try; grown with the length */
+        private int depth;
+        private int[] stateAt;
+        private int[] symbolPos;
+        private boolean[] found;
+        private char[] buffer;
+
+        /** The string to return from next(), or null if not yet computed */
+        private String pending;
+        private boolean exhausted;
+
+        Enumerator(CompactDFA dfa, int maxLen) {
+            this.dfa = dfa;
+            this.maxLen = Math.min(maxLen, longestAccepted(dfa));
+            this.order = sortedSymbols(dfa);
+            this.dist = distanceToFinal(dfa);
+            this.stateAt = new int[1];
+            this.symbolPos = new int[1];
+            this.found = new boolean[1];
+            this.buffer = new char[1];
+            this.dead = new long[1][];
+            this.exhausted = dfa.startState() < 0 || this.maxLen < 0;
+        }
+
+        private boolean canFinish(int state, int remaining) {
+            if (dist[state] < 0 || dist[state] > remaining) {
+                return false;
+            }
+            long[] row = remaining < dead.length ? dead[remaining] : null;
+            return row == null || (row[state >>> 6] & (1L << state)) == 0;
+        }
+
+        private void markDead(int state, int remaining) {
+            long[] row = dead[remaining];
+            if (row == null) {
+                row = new long[(dfa.stateCount() + 63) >>> 6];
+                dead[remaining] = row;
+            }
+            row[state >>> 6] |= 1L << state;
+        }
+
+        /**
+         * Makes room for a search of the given length.
+         */
+        private void ensureCapacity(int length) {
+            if (length < buffer.length) {
+                return;
+            }
+            int size = (int) Math.min((long) maxLen + 1, Math.max(length + 1L, 2L * buffer.length));
+            stateAt = Arrays.copyOf(stateAt, size);
+            symbolPos = Arrays.copyOf(symbolPos, size);
+            found = Arrays.copyOf(found, size);
+            buffer = Arrays.copyOf(buffer, size);
+            dead = Arrays.copyOf(dead, size);
+        }
+
+        private String advance() {
+            int start = dfa.startState();
+            while (length <= maxLen && length >= 0) {
+                if (!started) {
+                    if (length == 0) {
+                        length++;
+                        if (dfa.isFinal(start)) {
+                            return "";
+                        }
+                        continue;
+                    }
+                    if (!canFinish(start, length)) {
+                        length++;
+                        continue;
+                    }
+                    started = true;
+                    ensureCapacity(length);
+                    depth = 0;
+                    stateAt[0] = start;
+                    symbolPos[0] = 0;
+                    found[0] = false;
+                }
+
+                while (depth >= 0) {
+                    int s = stateAt[depth];
+                    int remaining = length - depth;
+                    if (symbolPos[depth] < order.length) {
+                        int symb = order[symbolPos[depth]++];
+                        int t = dfa.next(s, symb);
+                        if (t < 0 || !canFinish(t, remaining - 1)) {
+                            continue;
+                        }
+                        buffer[depth] = dfa.symbol(symb);
+                        if (remaining == 1) {
+                            // canFinish(t, 0) holds only for final states
+                            found[depth] = true;
+                            return new String(buffer, 0, length);
+                        }
+                        depth++;
+                        stateAt[depth] = t;
+                        symbolPos[depth] = 0;
+                        found[depth] = false;
+                    } else {
+                        if (!found[depth]) {
+                            markDead(s, remaining);
+                        }
+                        depth--;
+                        if (depth >= 0 && found[depth + 1]) {
+                            found[depth] = true;
+                        }
+                    }
+                }
+                started = false;
+                length++; // wraps to a negative value only past Integer.MAX_VALUE
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null && !exhausted) {
+                pending = advance();
+                exhausted = pending == null;
+            }
+            return pending != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = pending;
+            pending = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits input into tokens with a DFA by maximal munch: from the current
+ * position the DFA runs as far as it can, and the longest prefix that
+ * ended in a final state becomes the next token. A character at which no
+ * token starts is reported as an error and skipped.
+ *
+ * Final states are mapped to rules. When several rules end in the same
+ * final state, which happens when the DFA was built from several patterns,
+ * the rule with the highest priority wins.
+ *
+ * Plain maximal munch can take quadratic time when scans run far past the
+ * last final state and then back up. Following Reps' "Maximal-Munch
+ * Tokenization in Linear Time", every (state, position) pair from which a
+ * scan failed to reach a final state is remembered and cuts later scans
+ * short, so tokenization is linear in the input length. The memo holds at
+ * most MEMO_LIMIT pairs; pairs behind the current position are dropped
+ * first, and if a single look-ahead fails over more pairs than that, the
+ * oldest are forgotten and may be scanned again, trading the linear bound
+ * for bounded memory.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class Lexer {
+
+    /**
+     * Receives tokens. Positions are offsets in the whole input; a sink
+     * can be reused across inputs.
+     */
+    public interface TokenSink {
+
+        /**
+         * Called for every token, in input order.
+         * @param start the offset of the first character of the token
+         * @param end the offset just past the last character of the token
+         * @param rule the rule of the final state, or -1 if the state has no rule
+         * @param state the ID of the final state the token ended in
+         */
+        void token(int start, int end, int rule, int state);
+
+        /**
+         * Called for a character at which no token starts.
+         * @param position the offset of the character, which is skipped
+         */
+        void error(int position);
+    }
+
+    /**
+     * A reusable sink that stores tokens in growable int arrays.
+     */
+    public static final class TokenBuffer implements TokenSink {
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int[] rules = new int[64];
+        private int[] states = new int[64];
+        private int size;
+        private int errors;
+
+        @Override
+        public void token(int start, int end, int rule, int state) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                rules = Arrays.copyOf(rules, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            rules[size] = rule;
+            states[size] = state;
+            size++;
+        }
+
+        @Override
+        public void error(int position) {
+            errors++;
+        }
+
+        /**
+         * Forgets all tokens and errors but keeps the arrays for reuse.
+         */
+        public void clear() {
+            size = 0;
+            errors = 0;
+        }
+
+        /** @return the number of tokens */
+        public int size() {
+            return size;
+        }
+
+        /** @return the number of skipped characters */
+        public int errors() {
+            return errors;
+        }
+
+        /** @return the start offset of token i */
+        public int start(int i) {
+            return starts[i];
+        }
+
+        /** @return the end offset of token i */
+        public int end(int i) {
+            return ends[i];
+        }
+
+        /** @return the rule of token i */
+        public int rule(int i) {
+            return rules[i];
+        }
+
+        /** @return the final state of token i */
+        public int state(int i) {
+            return states[i];
+        }
+    }
+
+    /** Largest number of failed (state, position) pairs remembered at once */
+    static final int MEMO_LIMIT = 1 << 16;
+
+    /** The compiled automaton */
+    private final CompactDFA dfa;
+
+    /** Rule of each state, or -1 */
+    private final int[] ruleOf;
+
+    /** Priority of the rule of each state */
+    private final int[] priorityOf;
+
+    /** State ID of each state name, built on the first addRule */
+    private Map<String, Integer> idOf;
+
+    /**
+     * Creates a lexer for the current state of a DFA. Every final state is
+     * a token type; rules can be attached with addRule.
+     *
+     * @param dfa the DFA recognizing single tokens
+     */
+    public Lexer(DFA dfa) {
+        this.dfa = dfa.compile();
+        this.ruleOf = new int[this.dfa.stateCount()];
+        this.priorityOf = new int[this.dfa.stateCount()];
+        Arrays.fill(ruleOf, -1);
+        Arrays.fill(priorityOf, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Attaches a rule to a final state. If the state already has a rule,
+     * the one with the higher priority is kept; on equal priorities the
+     * rule added first is kept.
+     *
+     * @param finalState the name of a final state of the DFA
+     * @param rule the rule number reported with tokens ending in that state
+     * @param priority the priority of the rule
+     * @return true if successful, false if no final state with that name exists
+     */
+    public boolean addRule(String finalState, int rule, int priority) {
+        if (idOf == null) {
+            idOf = new HashMap<>();
+            for (int s = 0; s < dfa.stateCount(); s++) {
+                idOf.put(dfa.stateName(s), s);
+            }
+        }
+        Integer id = idOf.get(finalState);
+        if (id == null || !dfa.isFinal(id)) {
+            return false;
+        }
+        if (priority > priorityOf[id]) {
+            ruleOf[id] = rule;
+            priorityOf[id] = priority;
+        }
+        return true;
+    }
+
+    /**
+     * Tokenizes a character sequence.
+     *
+     * @param input the input
+     * @param sink receives tokens and errors
+     */
+    public void tokenize(CharSequence input, TokenSink sink) {
+        try {
+            run(new Input() {
+                @Override
+                public int charAt(int pos) {
+                    return pos < input.length() ? input.charAt(pos) : -1;
+                }
+
+                @Override
+                public void release(int pos) {
+                }
+            }, sink);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // a CharSequence never fails to read
+        }
+    }
+
+    /**
+     * Tokenizes the characters of a reader. Only the characters between the
+     * start of the current token and the furthest character scanned are
+     * buffered, so arbitrarily long inputs can be streamed.
+     *
+     * @param reader the input; it is read to the end but not closed
+     * @param sink receives tokens and errors
+     * @throws IOException if reading fails
+     */
+    public void tokenize(Reader reader, TokenSink sink) throws IOException {
+        run(new Input() {
+            private char[] buffer = new char[8192];
+            private int base;
+            private int length;
+            private boolean eof;
+
+            @Override
+            public int charAt(int pos) throws IOException {
+                while (pos - base >= length) {
+                    if (eof) {
+                        return -1;
+                    }
+                    if (length == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    int read = reader.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                return buffer[pos - base];
+            }
+
+            @Override
+            public void release(int pos) {
+                int drop = Math.min(pos - base, length);
+                if (drop > buffer.length / 2) {
+                    System.arraycopy(buffer, drop, buffer, 0, length - drop);
+                    length -= drop;
+                    base += drop;
+                }
+            }
+        }, sink);
+    }
+
+    /**
+     * Random access to the input by absolute offset.
+     */
+    private interface Input {
+        /** @return the character at pos, or -1 past the end of the input */
+        int charAt(int pos) throws IOException;
+
+        /** Allows the input to discard characters before pos. */
+        void release(int pos);
+    }
+
+    /**
+     * The maximal munch loop shared by both kinds of input.
+     */
+    private void run(Input input, TokenSink sink) throws IOException {
+        int start = dfa.startState();
+        int n = dfa.stateCount();
+        PairSet failed = new PairSet(n);
+        int failedUpTo = -1;
+
+        int pos = 0;
+        while (input.charAt(pos) >= 0) {
+            input.release(pos);
+            if (pos > failedUpTo && !failed.isEmpty()) {
+                failed.clear(); // no later scan can reach those positions
+            }
+            failed.setFloor(pos);
+
+            int lastEnd = -1;
+            int lastState = -1;
+            int state = start;
+            int i = pos;
+            int c;
+            while (state >= 0 && (c = input.charAt(i)) >= 0) {
+                state = dfa.step(state, (char) c);
+                i++;
+                if (state < 0 || i <= failedUpTo && failed.contains(i, state)) {
+                    break;
+                }
+                if (dfa.isFinal(state)) {
+                    lastEnd = i;
+                    lastState = state;
+                }
+            }
+
+            // Remember the states visited after the last final state as dead ends
+            if (start >= 0) {
+                int end = lastEnd < 0 ? pos : lastEnd;
+                int s = lastEnd < 0 ? start : lastState;
+                for (int j = end; j < i - 1; j++) {
+                    s = dfa.step(s, (char) input.charAt(j));
+                    if (s < 0) break;
+                    failed.add(j + 1, s);
+                    failedUpTo = Math.max(failedUpTo, j + 1);
+                }
+            }
+
+            if (lastEnd < 0) {
+                sink.error(pos);
+                pos++;
+            } else {
+                sink.token(pos, lastEnd, ruleOf[lastState], lastState);
+                pos = lastEnd;
+            }
+        }
+    }
+
+    /**
+     * Set of (position, state) pairs in open addressing over a long array,
+     * holding at most MEMO_LIMIT pairs. Pairs before the floor position can
+     * no longer be reached and are dropped when the set fills up.
+     */
+    private static final class PairSet {
+        private static final long EMPTY = -1;
+
+        private final long stateCount;
+        private long[] slots = new long[64];
+        private int size;
+        private int floor;
+
+        PairSet(int stateCount) {
+            this.stateCount = stateCount;
+            Arrays.fill(slots, EMPTY);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** Empties the set, shrinking it so that clearing stays cheap. */
+        void clear() {
+            if (slots.length > 64) {
+                slots = new long[64];
+            }
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+        }
+
+        /** Marks the positions before floor as unreachable. */
+        void setFloor(int floor) {
+            this.floor = floor;
+        }
+
+        boolean contains(int position, int state) {
+            long key = position * stateCount + state;
+            int mask = slots.length - 1;
+            for (int h = slot(key, mask); slots[h] != EMPTY; h = (h + 1) & mask) {
+                if (slots[h] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(int position, int state) {
+            if (2 * (size + 1) > slots.length) {
+                grow();
+            }
+            long key = position * stateCount + state;
+            int mask = slots.length - 1;
+            int h = slot(key, mask);
+            while (slots[h] != EMPTY) {
+                if (slots[h] == key) {
+                    return;
+                }
+                h = (h + 1) & mask;
+            }
+            slots[h] = key;
+            size++;
+        }
+
+        /**
+         * Doubles the table below the limit; at the limit, drops the pairs
+         * behind the floor, or everything if too few of them can go.
+         */
+        private void grow() {
+            long[] old = slots;
+            long cut = floor * stateCount;
+            boolean full = size + 1 > MEMO_LIMIT;
+            if (full) {
+                int live = 0;
+                for (long key : old) {
+                    if (key != EMPTY && key >= cut) {
+                        live++;
+                    }
+                }
+                if (live > MEMO_LIMIT / 2) {
+                    clear();
+                    return;
+                }
+            }
+            slots = new long[full ? old.length : old.length * 2];
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+            int mask = slots.length - 1;
+            for (long key : old) {
+                if (key != EMPTY && (!full || key >= cut)) {
+                    int h = slot(key, mask);
+                    while (slots[h] != EMPTY) {
+                        h = (h + 1) & mask;
+                    }
+                    slots[h] = key;
+                    size++;
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
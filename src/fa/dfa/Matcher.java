@@ -0,0 +1,19 @@
+package fa.dfa;
+
+/**
+ * A compiled recognizer for the language of a DFA.
+ * Implementations may be table driven or generated code, but they all
+ * answer exactly like DFA.accepts for the automaton they were built from.
+ * 
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public interface Matcher {
+
+	/**
+	 * Simulates the automaton on input s.
+	 * @param s - the input string
+	 * @return true if s in the language of the automaton and false otherwise
+	 */
+	public boolean accepts(CharSequence s);
+
+}
@@ -0,0 +1,464 @@
+package fa.dfa;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns a compiled DFA into a hidden class whose accepts method is the
+ * automaton itself. The generated method is a loop around a switch on the
+ * current state; each state is a switch on the input character whose cases
+ * store the constant target state, and finality is a switch on constants at
+ * the end. The JIT can then predict branches per state instead of loading
+ * rows from a table.
+ *
+ * Generated code only pays off while the method stays small: HotSpot does
+ * not compile methods larger than 8000 bytes of bytecode, and those would
+ * run slower than the table engine. Automata that exceed the state limit
+ * or that would produce a larger method get the CompactDFA table engine.
+ *
+ * The class file is written by hand in version 49 format, which needs no
+ * stack map frames, and is loaded with Lookup.defineHiddenClass.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class MatcherGenerator {
+
+    /** Default limit on the number of states of a generated matcher */
+    public static final int DEFAULT_MAX_STATES = 256;
+
+    /** Largest method that HotSpot still JIT compiles by default */
+    private static final int MAX_CODE_LENGTH = 8000;
+
+    /** Internal name of the generated class; hidden classes get a unique suffix */
+    private static final String CLASS_NAME = "fa/dfa/GeneratedMatcher";
+
+    private MatcherGenerator() {
+    }
+
+    /**
+     * Generates a specialized matcher, or returns the table engine if the
+     * automaton is too large to benefit.
+     *
+     * @param dfa the compiled automaton
+     * @param maxStates the largest number of states to generate code for
+     * @return a matcher equivalent to dfa
+     */
+    public static Matcher generate(CompactDFA dfa, int maxStates) {
+        if (dfa.stateCount() > maxStates) {
+            return dfa;
+        }
+        byte[] classFile = classFile(dfa);
+        if (classFile == null) {
+            return dfa;
+        }
+        MethodHandles.Lookup hidden;
+        try {
+            hidden = MethodHandles.lookup().defineHiddenClass(classFile, true);
+        } catch (IllegalAccessException | UnsupportedOperationException | SecurityException e) {
+            // Hidden classes may be unavailable, e.g. under a restrictive security manager
+            return dfa;
+        }
+        // A VerifyError or ClassFormatError above is a bug in the generator and propagates
+        try {
+            return (Matcher) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("generated matcher cannot be instantiated", e);
+        }
+    }
+
+    /**
+     * Writes the class file for a matcher of dfa.
+     *
+     * @return the class file, or null if the accepts method would be too large
+     */
+    static byte[] classFile(CompactDFA dfa) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int matcher = pool.classRef("fa/dfa/Matcher");
+        int init = pool.utf8("<init>");
+        int voidDesc = pool.utf8("()V");
+        int objectInit = pool.methodRef(superClass, "<init>", "()V", false);
+        int accepts = pool.utf8("accepts");
+        int acceptsDesc = pool.utf8("(Ljava/lang/CharSequence;)Z");
+        int codeAttr = pool.utf8("Code");
+        int charSequence = pool.classRef("java/lang/CharSequence");
+        int length = pool.methodRef(charSequence, "length", "()I", true);
+        int charAt = pool.methodRef(charSequence, "charAt", "(I)C", true);
+
+        byte[] code = acceptsCode(dfa, pool, length, charAt);
+        if (code == null) {
+            return null;
+        }
+
+        Bytes out = new Bytes();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(49);
+        pool.writeTo(out);
+        out.u2(0x0031); // public final super
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(1);
+        out.u2(matcher);
+        out.u2(0); // no fields
+        out.u2(2); // methods
+
+        // public <init>() { super(); }
+        out.u2(0x0001);
+        out.u2(init);
+        out.u2(voidDesc);
+        out.u2(1);
+        out.u2(codeAttr);
+        out.u4(12 + 5);
+        out.u2(1);
+        out.u2(1);
+        out.u4(5);
+        out.u1(0x2A); // aload_0
+        out.u1(0xB7); // invokespecial
+        out.u2(objectInit);
+        out.u1(0xB1); // return
+        out.u2(0);
+        out.u2(0);
+
+        // public boolean accepts(CharSequence s)
+        out.u2(0x0001);
+        out.u2(accepts);
+        out.u2(acceptsDesc);
+        out.u2(1);
+        out.u2(codeAttr);
+        out.u4(12 + code.length);
+        out.u2(2); // max stack
+        out.u2(6); // max locals: this, s, i, n, state, c
+        out.u4(code.length);
+        out.bytes(code, code.length);
+        out.u2(0);
+        out.u2(0);
+
+        out.u2(0); // no class attributes
+        return out.toArray();
+    }
+
+    /**
+     * Emits the body of accepts. Locals are 1 = s, 2 = i, 3 = n, 4 = state, 5 = c.
+     *
+     * @return the bytecode, or null if it would exceed MAX_CODE_LENGTH
+     */
+    private static byte[] acceptsCode(CompactDFA dfa, ConstantPool pool, int length, int charAt) {
+        Code code = new Code();
+        int start = dfa.startState();
+        if (start < 0) {
+            code.u1(0x03); // iconst_0
+            code.u1(0xAC); // ireturn
+            return code.toArray();
+        }
+
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+        int loop = code.newLabel();
+        int end = code.newLabel();
+        int accept = code.newLabel();
+        int reject = code.newLabel();
+        int[] stateLabels = new int[n];
+        for (int s = 0; s < n; s++) {
+            stateLabels[s] = code.newLabel();
+        }
+
+        // n = s.length(); i = 0; state = start;
+        code.u1(0x2B); // aload_1
+        code.invokeInterface(length, 1);
+        code.u1(0x3E); // istore_3
+        code.u1(0x03); // iconst_0
+        code.u1(0x3D); // istore_2
+        code.pushInt(start, pool);
+        code.u1(0x36); // istore
+        code.u1(4);
+
+        // while (i < n) { c = s.charAt(i++); switch (state) ... }
+        code.mark(loop);
+        code.u1(0x1C); // iload_2
+        code.u1(0x1D); // iload_3
+        code.branch(0xA2, end); // if_icmpge
+        code.u1(0x2B); // aload_1
+        code.u1(0x1C); // iload_2
+        code.invokeInterface(charAt, 2);
+        code.u1(0x36); // istore
+        code.u1(5);
+        code.u1(0x84); // iinc
+        code.u1(2);
+        code.u1(1);
+        code.u1(0x15); // iload
+        code.u1(4);
+        int[] all = new int[n];
+        for (int s = 0; s < n; s++) {
+            all[s] = s;
+        }
+        code.tableSwitch(all, stateLabels, reject);
+
+        // One block per state: switch on the character, store the target, loop
+        for (int s = 0; s < n; s++) {
+            code.mark(stateLabels[s]);
+            List<int[]> cases = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(s, i);
+                if (t >= 0) {
+                    cases.add(new int[] {dfa.symbol(i), t});
+                }
+            }
+            cases.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] keys = new int[cases.size()];
+            int[] targets = new int[cases.size()];
+            for (int c = 0; c < keys.length; c++) {
+                keys[c] = cases.get(c)[0];
+                targets[c] = code.newLabel();
+            }
+            code.u1(0x15); // iload
+            code.u1(5);
+            code.lookupSwitch(keys, targets, reject);
+            for (int c = 0; c < keys.length; c++) {
+                code.mark(targets[c]);
+                code.pushInt(cases.get(c)[1], pool);
+                code.u1(0x36); // istore
+                code.u1(4);
+                code.branch(0xA7, loop); // goto
+            }
+            if (code.length() > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+
+        // return state is final
+        code.mark(end);
+        code.u1(0x15); // iload
+        code.u1(4);
+        int finalCount = 0;
+        for (int s = 0; s < n; s++) {
+            if (dfa.isFinal(s)) finalCount++;
+        }
+        int[] finals = new int[finalCount];
+        int[] finalLabels = new int[finalCount];
+        for (int s = 0, f = 0; s < n; s++) {
+            if (dfa.isFinal(s)) {
+                finals[f] = s;
+                finalLabels[f++] = accept;
+            }
+        }
+        code.lookupSwitch(finals, finalLabels, reject);
+        code.mark(accept);
+        code.u1(0x04); // iconst_1
+        code.u1(0xAC); // ireturn
+        code.mark(reject);
+        code.u1(0x03); // iconst_0
+        code.u1(0xAC); // ireturn
+
+        if (code.length() > MAX_CODE_LENGTH) {
+            return null;
+        }
+        return code.toArray();
+    }
+
+    /**
+     * A growable big-endian byte buffer.
+     */
+    private static class Bytes {
+        protected byte[] data = new byte[256];
+        protected int size;
+
+        void u1(int b) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = (byte) b;
+        }
+
+        void u2(int v) {
+            u1(v >>> 8);
+            u1(v);
+        }
+
+        void u4(int v) {
+            u2(v >>> 16);
+            u2(v);
+        }
+
+        void bytes(byte[] b, int len) {
+            for (int i = 0; i < len; i++) {
+                u1(b[i]);
+            }
+        }
+
+        int length() {
+            return size;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Method bytecode with forward and backward labels. Branch offsets are
+     * patched once all labels are placed.
+     */
+    private static final class Code extends Bytes {
+        private int[] labels = new int[16];
+        private int labelCount;
+
+        /** Pending patches: {position of offset, address of instruction, label, width} */
+        private final List<int[]> fixups = new ArrayList<>();
+
+        int newLabel() {
+            if (labelCount == labels.length) {
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            }
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labels[label] = size;
+        }
+
+        private void offset(int instruction, int label, int width) {
+            fixups.add(new int[] {size, instruction, label, width});
+            for (int i = 0; i < width; i++) {
+                u1(0);
+            }
+        }
+
+        void branch(int opcode, int label) {
+            int at = size;
+            u1(opcode);
+            offset(at, label, 2);
+        }
+
+        void invokeInterface(int methodRef, int argSlots) {
+            u1(0xB9);
+            u2(methodRef);
+            u1(argSlots);
+            u1(0);
+        }
+
+        void pushInt(int v, ConstantPool pool) {
+            if (v >= -1 && v <= 5) {
+                u1(0x03 + v); // iconst_<v>
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+                u1(0x10); // bipush
+                u1(v);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+                u1(0x11); // sipush
+                u2(v);
+            } else {
+                u1(0x13); // ldc_w
+                u2(pool.integer(v));
+            }
+        }
+
+        private void pad() {
+            while (size % 4 != 0) {
+                u1(0);
+            }
+        }
+
+        /**
+         * Emits a tableswitch over consecutive keys 0 .. keys.length - 1.
+         */
+        void tableSwitch(int[] keys, int[] targets, int dflt) {
+            int at = size;
+            u1(0xAA);
+            pad();
+            offset(at, dflt, 4);
+            u4(0);
+            u4(keys.length - 1);
+            for (int target : targets) {
+                offset(at, target, 4);
+            }
+        }
+
+        /**
+         * Emits a lookupswitch; keys must be sorted in increasing order.
+         */
+        void lookupSwitch(int[] keys, int[] targets, int dflt) {
+            int at = size;
+            u1(0xAB);
+            pad();
+            offset(at, dflt, 4);
+            u4(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                u4(keys[i]);
+                offset(at, targets[i], 4);
+            }
+        }
+
+        @Override
+        byte[] toArray() {
+            for (int[] fix : fixups) {
+                int delta = labels[fix[2]] - fix[1];
+                if (fix[3] == 2) {
+                    data[fix[0]] = (byte) (delta >>> 8);
+                    data[fix[0] + 1] = (byte) delta;
+                } else {
+                    data[fix[0]] = (byte) (delta >>> 24);
+                    data[fix[0] + 1] = (byte) (delta >>> 16);
+                    data[fix[0] + 2] = (byte) (delta >>> 8);
+                    data[fix[0] + 3] = (byte) delta;
+                }
+            }
+            return super.toArray();
+        }
+    }
+
+    /**
+     * The constant pool of the generated class.
+     */
+    private static final class ConstantPool {
+        private final Bytes entries = new Bytes();
+        private int count = 1;
+
+        int utf8(String s) {
+            entries.u1(1);
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            entries.u2(b.length);
+            entries.bytes(b, b.length);
+            return count++;
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            entries.u1(7);
+            entries.u2(name);
+            return count++;
+        }
+
+        int methodRef(int owner, String name, String desc, boolean isInterface) {
+            int n = utf8(name);
+            int d = utf8(desc);
+            entries.u1(12);
+            entries.u2(n);
+            entries.u2(d);
+            int nameAndType = count++;
+            entries.u1(isInterface ? 11 : 10);
+            entries.u2(owner);
+            entries.u2(nameAndType);
+            return count++;
+        }
+
+        int integer(int v) {
+            entries.u1(3);
+            entries.u4(v);
+            return count++;
+        }
+
+        void writeTo(Bytes out) {
+            out.u2(count);
+            out.bytes(entries.data, entries.size);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package fa.dfa;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Hopcroft's partition refinement algorithm. States are first restricted
+ * to those reachable from the start state and completed with a dead state,
+ * then split until no block has members that disagree on the block of
+ * their successors. The block holding the dead state is dropped from the
+ * result, so the minimal DFA only keeps states that can still accept.
+ *
+ * Runs in O(k n log n) time for n states and k symbols.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+final class Minimizer {
+
+    private Minimizer() {
+    }
+
+    /**
+     * Builds the minimal DFA for the language of a compiled DFA. Each state
+     * of the result is named after the first state, in order of addition,
+     * of its equivalence class, and states are added in breadth-first order
+     * from the start state.
+     *
+     * @param dfa the compiled automaton
+     * @return a new minimal DFA with the same alphabet order
+     */
+    static DFA minimize(CompactDFA dfa) {
+        int k = dfa.symbolCount();
+        DFA result = new DFA();
+        for (int i = 0; i < k; i++) {
+            result.addSigma(dfa.symbol(i));
+        }
+        int start = dfa.startState();
+        if (start < 0) {
+            return result;
+        }
+
+        // Number the reachable states 0 .. m - 1 and add a dead state m
+        boolean[] reach = LanguageAnalysis.reachable(dfa);
+        int[] local = new int[dfa.stateCount()];
+        int m = 0;
+        for (int s = 0; s < dfa.stateCount(); s++) {
+            local[s] = reach[s] ? m++ : -1;
+        }
+        int[] original = new int[m];
+        for (int s = 0; s < dfa.stateCount(); s++) {
+            if (reach[s]) original[local[s]] = s;
+        }
+        int dead = m;
+        int size = m + 1;
+        int[] delta = new int[size * k];
+        for (int q = 0; q < m; q++) {
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(original[q], i);
+                delta[q * k + i] = t < 0 ? dead : local[t];
+            }
+        }
+        Arrays.fill(delta, dead * k, size * k, dead);
+
+        // Inverse transitions per symbol in compressed form
+        int[][] invOffset = new int[k][size + 1];
+        int[][] invFrom = new int[k][size];
+        for (int i = 0; i < k; i++) {
+            int[] offset = invOffset[i];
+            for (int q = 0; q < size; q++) {
+                offset[delta[q * k + i] + 1]++;
+            }
+            for (int q = 0; q < size; q++) {
+                offset[q + 1] += offset[q];
+            }
+            int[] fill = Arrays.copyOf(offset, size);
+            for (int q = 0; q < size; q++) {
+                invFrom[i][fill[delta[q * k + i]]++] = q;
+            }
+        }
+
+        // Partition: elements grouped by block, blocks are ranges [first, end)
+        int[] elems = new int[size];
+        int[] pos = new int[size];
+        int[] blockOf = new int[size];
+        int[] first = new int[size];
+        int[] end = new int[size];
+        int[] marked = new int[size];
+        int blocks = 0;
+
+        int finals = 0;
+        for (int q = 0; q < m; q++) {
+            if (dfa.isFinal(original[q])) finals++;
+        }
+        int f = 0;
+        int nf = finals;
+        for (int q = 0; q < size; q++) {
+            boolean isFinal = q < m && dfa.isFinal(original[q]);
+            int p = isFinal ? f++ : nf++;
+            elems[p] = q;
+            pos[q] = p;
+        }
+        if (finals > 0) {
+            first[blocks] = 0;
+            end[blocks] = finals;
+            blocks++;
+        }
+        first[blocks] = finals;
+        end[blocks] = size;
+        blocks++;
+        for (int b = 0; b < blocks; b++) {
+            for (int p = first[b]; p < end[b]; p++) {
+                blockOf[elems[p]] = b;
+            }
+        }
+
+        boolean[][] inWork = new boolean[size][];
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        int initial = blocks == 2 && end[0] - first[0] <= end[1] - first[1] ? 0 : blocks - 1;
+        inWork[initial] = new boolean[k];
+        for (int i = 0; i < k; i++) {
+            inWork[initial][i] = true;
+            work.add(new int[] {initial, i});
+        }
+
+        int[] splitter = new int[size];
+        int[] touched = new int[size];
+        while (!work.isEmpty()) {
+            int[] item = work.poll();
+            int b = item[0];
+            int a = item[1];
+            inWork[b][a] = false;
+
+            // Copy the splitter, since marking reorders elements of every block
+            int count = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, count);
+
+            int touchedCount = 0;
+            for (int j = 0; j < count; j++) {
+                int t = splitter[j];
+                for (int e = invOffset[a][t]; e < invOffset[a][t + 1]; e++) {
+                    int q = invFrom[a][e];
+                    int x = blockOf[q];
+                    int target = first[x] + marked[x];
+                    if (pos[q] < target) {
+                        continue; // already marked
+                    }
+                    if (marked[x] == 0) {
+                        touched[touchedCount++] = x;
+                    }
+                    // Swap q into the marked prefix of its block
+                    int other = elems[target];
+                    elems[target] = q;
+                    elems[pos[q]] = other;
+                    pos[other] = pos[q];
+                    pos[q] = target;
+                    marked[x]++;
+                }
+            }
+
+            for (int j = 0; j < touchedCount; j++) {
+                int x = touched[j];
+                int split = marked[x];
+                marked[x] = 0;
+                if (split == end[x] - first[x]) {
+                    continue; // every member moves to the splitter
+                }
+
+                // The marked prefix becomes a new block y
+                int y = blocks++;
+                first[y] = first[x];
+                end[y] = first[x] + split;
+                first[x] = end[y];
+                for (int p = first[y]; p < end[y]; p++) {
+                    blockOf[elems[p]] = y;
+                }
+
+                inWork[y] = new boolean[k];
+                if (inWork[x] == null) {
+                    inWork[x] = new boolean[k];
+                }
+                int smaller = end[y] - first[y] <= end[x] - first[x] ? y : x;
+                for (int i = 0; i < k; i++) {
+                    if (inWork[x][i]) {
+                        inWork[y][i] = true;
+                        work.add(new int[] {y, i});
+                    } else if (!inWork[smaller][i]) {
+                        inWork[smaller][i] = true;
+                        work.add(new int[] {smaller, i});
+                    }
+                }
+            }
+        }
+
+        // Emit blocks in breadth-first order, skipping the dead block
+        int deadBlock = blockOf[dead];
+        int[] representative = new int[blocks];
+        Arrays.fill(representative, Integer.MAX_VALUE);
+        for (int q = 0; q < m; q++) {
+            int b = blockOf[q];
+            representative[b] = Math.min(representative[b], original[q]);
+        }
+
+        int startBlock = blockOf[local[start]];
+        String[] names = new String[blocks];
+        int[] queue = new int[blocks];
+        int head = 0;
+        int tail = 0;
+        names[startBlock] = dfa.stateName(representative[startBlock]);
+        result.addState(names[startBlock]);
+        result.setStart(names[startBlock]);
+        if (startBlock == deadBlock) {
+            return result;
+        }
+        queue[tail++] = startBlock;
+        while (head < tail) {
+            int b = queue[head++];
+            int q = elems[first[b]];
+            if (dfa.isFinal(original[q])) {
+                result.setFinal(names[b]);
+            }
+            for (int i = 0; i < k; i++) {
+                int t = blockOf[delta[q * k + i]];
+                if (t == deadBlock) {
+                    continue;
+                }
+                if (names[t] == null) {
+                    names[t] = dfa.stateName(representative[t]);
+                    result.addState(names[t]);
+                    queue[tail++] = t;
+                }
+                result.addTransition(names[b], names[t], dfa.symbol(i));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,505 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A transition table for a DFA that lives outside the Java heap.
+ * States are identified by integer IDs from 0 to stateCount() - 1 and
+ * every transition, final flag and symbol index is stored in direct
+ * buffers, so the number of heap objects does not grow with the size
+ * of the automaton.
+ *
+ * Rows are stored state-major: the target of state s on the symbol with
+ * index i is at position s * symbolCount() + i. A missing transition is
+ * stored as -1. Large tables are split into chunks because a single
+ * direct buffer cannot exceed 2GB.
+ *
+ * A table can be filled without ever holding the automaton on the heap:
+ * create an empty table and write it row by row with setRow, or stream a
+ * table saved by write back in with read, which copies the file straight
+ * into the direct buffers. of(DFA) is a convenience for automata that
+ * already are on the heap.
+ *
+ * The table must be closed when no longer needed. Java 17 offers no
+ * supported way to free a direct buffer, so release is driven by the
+ * garbage collector: close() drops the only references to the buffers
+ * and their memory is returned once they are collected. Any use of the
+ * table after close(), including one racing with it, throws an
+ * IllegalStateException.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class OffHeapTransitionTable implements AutoCloseable {
+
+    /** log2 of the number of ints held by one transition chunk (256MB) */
+    private static final int CHUNK_SHIFT = 26;
+
+    /** Mask selecting the offset of an int within its chunk */
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    /** "DFAT", the first four bytes written by write */
+    private static final int MAGIC = 0x44464154;
+
+    /** Format version written by write */
+    private static final int VERSION = 1;
+
+    /** Number of states in the table */
+    private final int stateCount;
+
+    /** Number of symbols in the alphabet */
+    private final int symbolCount;
+
+    /** Alphabet in symbol index order, kept for write */
+    private final char[] symbols;
+
+    /** Smallest character in the alphabet, the base of the symbol index range */
+    private final char minSymbol;
+
+    /** Number of characters covered by the symbol index range */
+    private final int symbolRange;
+
+    /** The off-heap storage, or null once the table is closed */
+    private volatile Buffers buffers;
+
+    /** ID of the start state, or -1 if none has been set */
+    private int startState;
+
+    /**
+     * The direct buffers of an open table. They are swapped out as one
+     * object, so a reader sees either all of them or none.
+     */
+    private static final class Buffers {
+        /** Maps (c - minSymbol) to the symbol index of c, or -1 if c is not in the alphabet */
+        final IntBuffer symbolIndex;
+
+        /** Transition rows, split into chunks of 1 << CHUNK_SHIFT ints */
+        final ByteBuffer[] chunks;
+
+        /** One bit per state, set if the state is final */
+        final ByteBuffer finals;
+
+        Buffers(IntBuffer symbolIndex, ByteBuffer[] chunks, ByteBuffer finals) {
+            this.symbolIndex = symbolIndex;
+            this.chunks = chunks;
+            this.finals = finals;
+        }
+    }
+
+    /**
+     * Creates an empty off-heap table with no transitions, no final
+     * states and no start state.
+     *
+     * @param stateCount the number of states
+     * @param symbols the alphabet, in symbol index order
+     * @throws IllegalArgumentException if stateCount is negative or symbols contains a duplicate
+     */
+    public OffHeapTransitionTable(int stateCount, char[] symbols) {
+        this(stateCount, symbols, true);
+    }
+
+    /**
+     * Allocates the buffers, filling the transitions with -1 if asked to.
+     */
+    private OffHeapTransitionTable(int stateCount, char[] symbols, boolean clear) {
+        if (stateCount < 0) {
+            throw new IllegalArgumentException("negative state count: " + stateCount);
+        }
+        this.stateCount = stateCount;
+        this.symbolCount = symbols.length;
+        this.symbols = symbols.clone();
+        this.startState = -1;
+
+        char min = Character.MAX_VALUE;
+        char max = Character.MIN_VALUE;
+        for (char c : symbols) {
+            if (c < min) min = c;
+            if (c > max) max = c;
+        }
+        this.minSymbol = symbols.length == 0 ? 0 : min;
+        this.symbolRange = symbols.length == 0 ? 0 : max - min + 1;
+
+        IntBuffer symbolIndex = ByteBuffer.allocateDirect(symbolRange * Integer.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        for (int i = 0; i < symbolRange; i++) {
+            symbolIndex.put(i, -1);
+        }
+        for (int i = 0; i < symbols.length; i++) {
+            int slot = symbols[i] - minSymbol;
+            if (symbolIndex.get(slot) != -1) {
+                throw new IllegalArgumentException("duplicate symbol: " + symbols[i]);
+            }
+            symbolIndex.put(slot, i);
+        }
+
+        long cells = (long) stateCount * symbolCount;
+        int chunkCount = (int) ((cells + CHUNK_MASK) >>> CHUNK_SHIFT);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int size = (int) Math.min(1L << CHUNK_SHIFT, cells - ((long) i << CHUNK_SHIFT));
+            ByteBuffer chunk = ByteBuffer.allocateDirect(size * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder());
+            if (clear) {
+                for (int j = 0; j < size; j++) {
+                    chunk.putInt(j << 2, -1);
+                }
+            }
+            chunks[i] = chunk;
+        }
+
+        this.buffers = new Buffers(symbolIndex, chunks,
+                ByteBuffer.allocateDirect((stateCount + 7) >>> 3));
+    }
+
+    /**
+     * Copies the transition structure of a DFA into a new off-heap table.
+     * State IDs follow the order in which the states were added to the DFA
+     * and symbol indices follow the order in which symbols were added.
+     * The DFA and a map of its states are needed while copying; use setRow
+     * or read to build large tables without them.
+     *
+     * @param dfa the DFA to copy
+     * @return a new off-heap table equivalent to dfa
+     */
+    public static OffHeapTransitionTable of(DFA dfa) {
+        List<String> stateOrder = dfa.getStateOrder();
+        List<Character> sigmaOrder = dfa.getSigmaOrder();
+
+        char[] symbols = new char[sigmaOrder.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = sigmaOrder.get(i);
+        }
+
+        OffHeapTransitionTable table = new OffHeapTransitionTable(stateOrder.size(), symbols, false);
+        Map<DFAState, Integer> ids = new HashMap<>();
+        for (int i = 0; i < stateOrder.size(); i++) {
+            ids.put(dfa.getDFAState(stateOrder.get(i)), i);
+        }
+
+        int[] row = new int[symbols.length];
+        for (int from = 0; from < stateOrder.size(); from++) {
+            DFAState state = dfa.getDFAState(stateOrder.get(from));
+            for (int i = 0; i < symbols.length; i++) {
+                DFAState to = state.getTo(symbols[i]);
+                row[i] = to == null ? -1 : ids.get(to);
+            }
+            table.setRow(from, row);
+            table.setFinal(from, state.isFinal());
+        }
+
+        DFAState start = dfa.getStartState();
+        if (start != null) {
+            table.setStart(ids.get(start));
+        }
+        return table;
+    }
+
+    /**
+     * Returns the buffers of an open table.
+     *
+     * @throws IllegalStateException if the table has been closed
+     */
+    private Buffers open() {
+        Buffers b = buffers;
+        if (b == null) {
+            throw new IllegalStateException("table is closed");
+        }
+        return b;
+    }
+
+    /**
+     * Returns the symbol index of a character.
+     *
+     * @param c the input character
+     * @return the symbol index, or -1 if c is not in the alphabet
+     */
+    private int indexOf(Buffers b, char c) {
+        int slot = c - minSymbol;
+        if (slot < 0 || slot >= symbolRange) {
+            return -1;
+        }
+        return b.symbolIndex.get(slot);
+    }
+
+    /**
+     * Reads the transition cell for a state and symbol index.
+     */
+    private int cell(Buffers b, int state, int symb) {
+        long pos = (long) state * symbolCount + symb;
+        return b.chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK) << 2);
+    }
+
+    /**
+     * @return the number of states in the table
+     */
+    public int stateCount() {
+        return stateCount;
+    }
+
+    /**
+     * @return the number of symbols in the alphabet
+     */
+    public int symbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * Adds or replaces the transition from one state to another on a symbol.
+     *
+     * @param fromState the ID of the source state
+     * @param onSymb the symbol that triggers the transition
+     * @param toState the ID of the destination state
+     * @return true if successful, false if a state ID is out of range or the symbol is not in the alphabet
+     */
+    public boolean setTransition(int fromState, char onSymb, int toState) {
+        Buffers b = open();
+        int symb = indexOf(b, onSymb);
+        if (symb < 0 || fromState < 0 || fromState >= stateCount
+                || toState < 0 || toState >= stateCount) {
+            return false;
+        }
+        long pos = (long) fromState * symbolCount + symb;
+        b.chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & CHUNK_MASK) << 2, toState);
+        return true;
+    }
+
+    /**
+     * Replaces all transitions of a state at once.
+     *
+     * @param state the ID of the source state
+     * @param targets the destination of each symbol, in symbol index order,
+     *        or -1 for no transition
+     * @return true if successful, false if a state ID is out of range or
+     *         targets does not have one entry per symbol
+     */
+    public boolean setRow(int state, int[] targets) {
+        Buffers b = open();
+        if (state < 0 || state >= stateCount || targets.length != symbolCount) {
+            return false;
+        }
+        for (int t : targets) {
+            if (t < -1 || t >= stateCount) {
+                return false;
+            }
+        }
+        long pos = (long) state * symbolCount;
+        for (int i = 0; i < symbolCount; i++, pos++) {
+            b.chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & CHUNK_MASK) << 2, targets[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the destination of the transition from a state on a symbol.
+     *
+     * @param state the ID of the source state
+     * @param symb the input symbol
+     * @return the ID of the destination state, or -1 if no transition exists
+     */
+    public int getTo(int state, char symb) {
+        Buffers b = open();
+        int index = indexOf(b, symb);
+        if (index < 0 || state < 0 || state >= stateCount) {
+            return -1;
+        }
+        return cell(b, state, index);
+    }
+
+    /**
+     * Marks or unmarks a state as final.
+     *
+     * @param state the ID of the state
+     * @param isFinal true to mark the state as final, false otherwise
+     * @return true if successful, false if the state ID is out of range
+     */
+    public boolean setFinal(int state, boolean isFinal) {
+        Buffers b = open();
+        if (state < 0 || state >= stateCount) {
+            return false;
+        }
+        int bits = b.finals.get(state >>> 3);
+        int bit = 1 << (state & 7);
+        b.finals.put(state >>> 3, (byte) (isFinal ? bits | bit : bits & ~bit));
+        return true;
+    }
+
+    /**
+     * Checks if a state is final.
+     *
+     * @param state the ID of the state
+     * @return true if the state exists and is final
+     */
+    public boolean isFinal(int state) {
+        return isFinal(open(), state);
+    }
+
+    private boolean isFinal(Buffers b, int state) {
+        if (state < 0 || state >= stateCount) {
+            return false;
+        }
+        return (b.finals.get(state >>> 3) & (1 << (state & 7))) != 0;
+    }
+
+    /**
+     * Sets the start state of the table.
+     *
+     * @param state the ID of the new start state
+     * @return true if successful, false if the state ID is out of range
+     */
+    public boolean setStart(int state) {
+        open();
+        if (state < 0 || state >= stateCount) {
+            return false;
+        }
+        startState = state;
+        return true;
+    }
+
+    /**
+     * @return the ID of the start state, or -1 if none has been set
+     */
+    public int getStart() {
+        return startState;
+    }
+
+    /**
+     * Simulates the automaton on the input, reading transitions directly
+     * from off-heap memory. Behaves exactly like DFA.accepts.
+     *
+     * @param s the input string
+     * @return true if s is accepted, false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        Buffers b = open();
+        if (startState < 0) {
+            return false;
+        }
+
+        int current = startState;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            int symb = indexOf(b, s.charAt(i));
+            if (symb < 0) {
+                return false; // Character not in alphabet
+            }
+            current = cell(b, current, symb);
+            if (current < 0) {
+                return false; // No transition defined
+            }
+        }
+        return isFinal(b, current);
+    }
+
+    /**
+     * Writes this table to a channel: a header with the alphabet and the
+     * start state, the final flags and then the transition chunks as they
+     * are stored, without copying them to the heap.
+     *
+     * @param out the channel to write to
+     * @throws IOException if writing fails
+     */
+    public void write(WritableByteChannel out) throws IOException {
+        Buffers b = open();
+        ByteBuffer header = ByteBuffer.allocate(21 + 2 * symbolCount);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1));
+        header.putInt(stateCount);
+        header.putInt(symbolCount);
+        for (char c : symbols) {
+            header.putChar(c);
+        }
+        header.putInt(startState);
+        writeFully(out, header.flip());
+        writeFully(out, b.finals.duplicate().clear());
+        for (ByteBuffer chunk : b.chunks) {
+            writeFully(out, chunk.duplicate().clear());
+        }
+    }
+
+    /**
+     * Reads a table written by write. The final flags and transitions are
+     * read straight into new direct buffers, so the heap use does not
+     * depend on the size of the table. Every transition is checked to be
+     * in range.
+     *
+     * @param in the channel to read from
+     * @return a new table, to be closed by the caller
+     * @throws IOException if reading fails or the data is inconsistent
+     */
+    public static OffHeapTransitionTable read(ReadableByteChannel in) throws IOException {
+        ByteBuffer fixed = readFully(in, ByteBuffer.allocate(17));
+        if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+            throw new IOException("not an off-heap transition table");
+        }
+        ByteOrder order = fixed.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        int stateCount = fixed.getInt();
+        int symbolCount = fixed.getInt();
+        if (stateCount < 0 || symbolCount < 0 || symbolCount > Character.MAX_VALUE + 1) {
+            throw new IOException("bad state or symbol count");
+        }
+        ByteBuffer rest = readFully(in, ByteBuffer.allocate(2 * symbolCount + 4));
+        char[] symbols = new char[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = rest.getChar();
+        }
+        int start = rest.getInt();
+        if (start < -1 || start >= stateCount) {
+            throw new IOException("bad start state: " + start);
+        }
+
+        OffHeapTransitionTable table;
+        try {
+            table = new OffHeapTransitionTable(stateCount, symbols, false);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        Buffers b = table.buffers;
+        readFully(in, b.finals.clear());
+        for (ByteBuffer chunk : b.chunks) {
+            readFully(in, chunk.clear());
+            chunk.order(order);
+            for (int j = 0, size = chunk.capacity() >> 2; j < size; j++) {
+                int t = chunk.getInt(j << 2);
+                if (t < -1 || t >= stateCount) {
+                    table.close();
+                    throw new IOException("bad transition target: " + t);
+                }
+            }
+        }
+        table.startState = start;
+        return table;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                throw new IOException("unexpected end of table");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Drops the off-heap buffers held by this table; their memory is
+     * returned when the garbage collector reclaims them. Calling close()
+     * more than once has no effect.
+     */
+    @Override
+    public void close() {
+        buffers = null;
+    }
+}
@@ -0,0 +1,164 @@
+package fa.dfa;
+
+import fa.SubsetName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Determinizes the reverse of a DFA. Following every transition backwards
+ * turns the DFA into an NFA whose start states are the final states of the
+ * original and whose only final state is the original start state; the
+ * subset construction over the reverse edges of each symbol then gives a
+ * DFA for the reversed language. Only subsets reachable from the set of
+ * final states are built, and the empty subset is left out, so the result
+ * is partial.
+ *
+ * By Brzozowski's theorem, the determinized reverse of a DFA whose states
+ * are all reachable is minimal, so reversing twice minimizes.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+final class Reverser {
+
+    private Reverser() {
+    }
+
+    /**
+     * Builds the DFA for the reversed language of a compiled DFA.
+     *
+     * @param dfa the compiled automaton
+     * @param maxStates the largest acceptable number of states
+     * @param subsetNames true to name each state after its subset as in
+     *        "[a, c]", built by SubsetName so that names never collide,
+     *        false to name states by their number
+     * @return the reversed automaton with the same alphabet order, or null
+     *         if it has more than maxStates states
+     */
+    static CompactDFA reverse(CompactDFA dfa, int maxStates, boolean subsetNames) {
+        int n = dfa.stateCount();
+        int k = dfa.symbolCount();
+
+        // Reverse edges per symbol in compressed form
+        int[][] offset = new int[k][n + 1];
+        int[][] from = new int[k][];
+        for (int i = 0; i < k; i++) {
+            for (int s = 0; s < n; s++) {
+                int t = dfa.next(s, i);
+                if (t >= 0) offset[i][t + 1]++;
+            }
+            for (int t = 0; t < n; t++) {
+                offset[i][t + 1] += offset[i][t];
+            }
+            from[i] = new int[offset[i][n]];
+            int[] fill = Arrays.copyOf(offset[i], n);
+            for (int s = 0; s < n; s++) {
+                int t = dfa.next(s, i);
+                if (t >= 0) from[i][fill[t]++] = s;
+            }
+        }
+
+        // Subsets are sorted arrays of state IDs
+        int finals = 0;
+        for (int s = 0; s < n; s++) {
+            if (dfa.isFinal(s)) finals++;
+        }
+        int[] start = new int[finals];
+        for (int s = 0, j = 0; s < n; s++) {
+            if (dfa.isFinal(s)) start[j++] = s;
+        }
+
+        Map<SubsetKey, Integer> ids = new HashMap<>();
+        List<int[]> subsets = new ArrayList<>();
+        CompactDFA.RowTable rows = new CompactDFA.RowTable(k, 16);
+        ids.put(new SubsetKey(start), 0);
+        subsets.add(start);
+
+        int[] mark = new int[n];
+        int stamp = 0;
+        int[] buffer = new int[n];
+        int[] row = new int[k];
+        for (int id = 0; id < subsets.size(); id++) {
+            int[] set = subsets.get(id);
+            for (int i = 0; i < k; i++) {
+                stamp++;
+                int size = 0;
+                for (int t : set) {
+                    for (int e = offset[i][t]; e < offset[i][t + 1]; e++) {
+                        int s = from[i][e];
+                        if (mark[s] != stamp) {
+                            mark[s] = stamp;
+                            buffer[size++] = s;
+                        }
+                    }
+                }
+                if (size == 0) {
+                    row[i] = -1;
+                    continue;
+                }
+                int[] next = Arrays.copyOf(buffer, size);
+                Arrays.sort(next);
+                SubsetKey key = new SubsetKey(next);
+                Integer to = ids.get(key);
+                if (to == null) {
+                    if (subsets.size() >= maxStates) {
+                        return null;
+                    }
+                    to = subsets.size();
+                    ids.put(key, to);
+                    subsets.add(next);
+                }
+                row[i] = to;
+            }
+            rows.add(row);
+        }
+
+        int m = subsets.size();
+        char[] symbols = new char[k];
+        for (int i = 0; i < k; i++) {
+            symbols[i] = dfa.symbol(i);
+        }
+        String[] names = new String[m];
+        boolean[] isFinal = new boolean[m];
+        int origin = dfa.startState();
+        for (int id = 0; id < m; id++) {
+            int[] set = subsets.get(id);
+            names[id] = subsetNames ? subsetName(dfa, set) : Integer.toString(id);
+            isFinal[id] = origin >= 0 && Arrays.binarySearch(set, origin) >= 0;
+        }
+        return rows.build(symbols, names, isFinal, 0);
+    }
+
+    private static String subsetName(CompactDFA dfa, int[] set) {
+        SubsetName name = new SubsetName();
+        for (int s : set) {
+            name.add(dfa.stateName(s));
+        }
+        return name.toString();
+    }
+
+    /**
+     * Hash key wrapping a sorted subset of state IDs.
+     */
+    private static final class SubsetKey {
+        private final int[] set;
+        private final int hash;
+
+        SubsetKey(int[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SubsetKey && Arrays.equals(set, ((SubsetKey) o).set);
+        }
+    }
+}
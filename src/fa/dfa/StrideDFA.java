@@ -0,0 +1,153 @@
+package fa.dfa;
+
+/**
+ * A compiled DFA that consumes several symbols per lookup. For a stride of
+ * k the table is indexed by a state and a packed k-tuple of symbol indices,
+ * so a long input takes about length / k dependent lookups instead of one
+ * per symbol. This pays off for small alphabets, where the table for the
+ * k-tuples stays small.
+ *
+ * Tables for strides 1, 2, 4, ... up to the chosen stride are built by
+ * squaring: the table for 2m is the table for m composed with itself. The
+ * smaller tables are kept to consume the symbols left over at the end of
+ * an input. Missing transitions lead to an extra dead state so that
+ * composition is always defined.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class StrideDFA {
+
+    /** The compiled automaton this table was built from */
+    private final CompactDFA dfa;
+
+    /** Number of symbols in the alphabet */
+    private final int symbolCount;
+
+    /** ID of the dead state */
+    private final int dead;
+
+    /** tables[j] is the table for stride 2^j; tables[j][s * width[j] + tuple] is the target state */
+    private final int[][] tables;
+
+    /** width[j] is symbolCount^(2^j), the number of tuples for stride 2^j */
+    private final int[] width;
+
+    /** Final flag of each state, including the dead state */
+    private final boolean[] finals;
+
+    /**
+     * Builds the largest stride table that fits the budget.
+     *
+     * @param dfa the compiled automaton
+     * @param maxStride the largest stride to consider; rounded down to a power of two
+     * @param budget the largest number of table cells allowed for the widest table
+     */
+    public StrideDFA(CompactDFA dfa, int maxStride, long budget) {
+        this.dfa = dfa;
+        this.symbolCount = dfa.symbolCount();
+        int n = dfa.stateCount();
+        this.dead = n;
+
+        this.finals = new boolean[n + 1];
+        for (int s = 0; s < n; s++) {
+            finals[s] = dfa.isFinal(s);
+        }
+
+        // Pick the number of squarings that fits the budget; a one-symbol
+        // alphabet keeps one tuple per state at every stride
+        int levels = 1;
+        long tuples = symbolCount;
+        while (levels < Integer.SIZE - 1 && (1 << levels) <= maxStride) {
+            long wider = tuples * tuples;
+            if (wider > Integer.MAX_VALUE || wider * (n + 1) > budget
+                    || wider * (n + 1) > Integer.MAX_VALUE) {
+                break;
+            }
+            tuples = wider;
+            levels++;
+        }
+
+        this.tables = new int[levels][];
+        this.width = new int[levels];
+
+        width[0] = symbolCount;
+        int[] base = new int[(n + 1) * symbolCount];
+        for (int s = 0; s <= n; s++) {
+            for (int i = 0; i < symbolCount; i++) {
+                int t = s == n ? -1 : dfa.next(s, i);
+                base[s * symbolCount + i] = t < 0 ? dead : t;
+            }
+        }
+        tables[0] = base;
+
+        for (int j = 1; j < levels; j++) {
+            int[] half = tables[j - 1];
+            int w = width[j - 1];
+            width[j] = w * w;
+            int[] table = new int[(n + 1) * width[j]];
+            for (int s = 0; s <= n; s++) {
+                for (int a = 0; a < w; a++) {
+                    int mid = half[s * w + a];
+                    System.arraycopy(half, mid * w, table, s * width[j] + a * w, w);
+                }
+            }
+            tables[j] = table;
+        }
+    }
+
+    /**
+     * @return the number of symbols consumed by one lookup in the widest table
+     */
+    public int stride() {
+        return 1 << (tables.length - 1);
+    }
+
+    /**
+     * @return the total number of cells in all tables
+     */
+    public long tableSize() {
+        long size = 0;
+        for (int[] table : tables) {
+            size += table.length;
+        }
+        return size;
+    }
+
+    /**
+     * Simulates the automaton on the input, consuming stride() symbols per
+     * lookup and the remaining symbols with the narrower tables. Behaves
+     * exactly like DFA.accepts.
+     *
+     * @param s the input string
+     * @return true if s is accepted, false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        int current = dfa.startState();
+        if (current < 0) {
+            return false;
+        }
+
+        int length = s.length();
+        int pos = 0;
+        for (int j = tables.length - 1; j >= 0; j--) {
+            int k = 1 << j;
+            int[] table = tables[j];
+            int w = width[j];
+            while (length - pos >= k) {
+                int tuple = 0;
+                for (int end = pos + k; pos < end; pos++) {
+                    int symb = dfa.symbolIndex(s.charAt(pos));
+                    if (symb < 0) {
+                        return false; // Character not in alphabet
+                    }
+                    tuple = tuple * symbolCount + symb;
+                }
+                current = table[current * w + tuple];
+                if (current == dead) {
+                    return false; // No transition defined
+                }
+            }
+        }
+        return finals[current];
+    }
+}
@@ -0,0 +1,586 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A holder for a DFA that is updated while other threads are matching
+ * against it. Every published state of the automaton is an immutable
+ * Version. Readers take the current version with a single volatile read
+ * and are never blocked; writers stage changes in an Editor and publish a
+ * new version atomically.
+ *
+ * Versions are path-copied. Transition rows and state names are grouped
+ * into pages, and an edit copies only the page directories, the touched
+ * pages and the touched rows, so unchanged rows and names are shared
+ * between versions. Names are looked up in a persistent hash trie, where
+ * adding a state copies one path of at most seven small nodes. The
+ * alphabet is fixed when the holder is created.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class VersionedDFA {
+
+    /** log2 of the number of rows per page */
+    private static final int PAGE_SHIFT = 6;
+
+    /** Number of rows per page */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /** The currently published version */
+    private final AtomicReference<Version> current;
+
+    /**
+     * Creates a holder whose first version is a snapshot of the given DFA.
+     * Later changes to dfa are not reflected in the holder.
+     *
+     * @param dfa the initial automaton
+     */
+    public VersionedDFA(DFA dfa) {
+        CompactDFA compact = dfa.compiled();
+        int n = compact.stateCount();
+        int k = compact.symbolCount();
+
+        char[] symbols = new char[k];
+        for (int i = 0; i < k; i++) {
+            symbols[i] = compact.symbol(i);
+        }
+
+        int[][][] pages = new int[(n + PAGE_SIZE - 1) >>> PAGE_SHIFT][][];
+        String[][] names = new String[pages.length][];
+        NameIndex ids = NameIndex.EMPTY;
+        for (int s = 0; s < n; s++) {
+            int[] row = new int[k + 1];
+            for (int i = 0; i < k; i++) {
+                row[i] = compact.next(s, i);
+            }
+            row[k] = compact.isFinal(s) ? 1 : 0;
+            if (pages[s >>> PAGE_SHIFT] == null) {
+                pages[s >>> PAGE_SHIFT] = new int[PAGE_SIZE][];
+                names[s >>> PAGE_SHIFT] = new String[PAGE_SIZE];
+            }
+            pages[s >>> PAGE_SHIFT][s & (PAGE_SIZE - 1)] = row;
+            names[s >>> PAGE_SHIFT][s & (PAGE_SIZE - 1)] = compact.stateName(s);
+            ids = ids.with(compact.stateName(s), s, false);
+        }
+
+        this.current = new AtomicReference<>(
+                new Version(0, symbols, pages, names, ids, n, compact.startState()));
+    }
+
+    /**
+     * Returns the currently published version. The returned version never
+     * changes, so a reader may use it for as many inputs as it likes.
+     *
+     * @return the current version
+     */
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * Simulates the current version on the input without blocking.
+     *
+     * @param s the input string
+     * @return true if the current version accepts s, false otherwise
+     */
+    public boolean accepts(CharSequence s) {
+        return current.get().accepts(s);
+    }
+
+    /**
+     * Starts staging changes on top of the current version.
+     *
+     * @return a new editor
+     */
+    public Editor edit() {
+        return new Editor(current.get());
+    }
+
+    /**
+     * Applies a change and publishes it, retrying on top of the newer
+     * version whenever another writer published first. The change may be
+     * run more than once and should have no side effects besides the edits.
+     *
+     * @param change the edits to apply
+     * @return the published version
+     */
+    public Version update(Consumer<Editor> change) {
+        while (true) {
+            Editor editor = edit();
+            change.accept(editor);
+            Version published = editor.publish();
+            if (published != null) {
+                return published;
+            }
+        }
+    }
+
+    /**
+     * An immutable version of the automaton.
+     */
+    public static final class Version {
+
+        /** Sequence number of this version, starting at 0 */
+        private final long number;
+
+        /** Alphabet, in symbol index order */
+        private final char[] symbols;
+
+        /** Smallest character in the alphabet, the base of symbolIndex */
+        private final char minSymbol;
+
+        /** Maps (c - minSymbol) to the symbol index of c, or -1; shared by all versions */
+        private final int[] symbolIndex;
+
+        /** pages[p][i] is the row of state p * PAGE_SIZE + i; the last cell of a row is 1 if the state is final */
+        private final int[][][] pages;
+
+        /** names[p][i] is the name of state p * PAGE_SIZE + i */
+        private final String[][] names;
+
+        /** State IDs, keyed by name */
+        private final NameIndex ids;
+
+        /** Number of states */
+        private final int stateCount;
+
+        /** ID of the start state, or -1 if none has been set */
+        private final int startState;
+
+        private Version(long number, char[] symbols, int[][][] pages,
+                String[][] names, NameIndex ids, int stateCount, int startState) {
+            this(number, symbols, indexBase(symbols), symbolIndex(symbols), pages,
+                    names, ids, stateCount, startState);
+        }
+
+        private Version(long number, char[] symbols, char minSymbol, int[] symbolIndex,
+                int[][][] pages, String[][] names, NameIndex ids,
+                int stateCount, int startState) {
+            this.number = number;
+            this.symbols = symbols;
+            this.minSymbol = minSymbol;
+            this.symbolIndex = symbolIndex;
+            this.pages = pages;
+            this.names = names;
+            this.ids = ids;
+            this.stateCount = stateCount;
+            this.startState = startState;
+        }
+
+        private static char indexBase(char[] symbols) {
+            char min = Character.MAX_VALUE;
+            for (char c : symbols) {
+                if (c < min) min = c;
+            }
+            return symbols.length == 0 ? 0 : min;
+        }
+
+        private static int[] symbolIndex(char[] symbols) {
+            char min = indexBase(symbols);
+            int max = min - 1;
+            for (char c : symbols) {
+                if (c > max) max = c;
+            }
+            int[] index = new int[max - min + 1];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < symbols.length; i++) {
+                index[symbols[i] - min] = i;
+            }
+            return index;
+        }
+
+        /**
+         * Returns the symbol index of a character, or -1 if it is not in the alphabet.
+         */
+        private int indexOf(char c) {
+            int slot = c - minSymbol;
+            return slot < 0 || slot >= symbolIndex.length ? -1 : symbolIndex[slot];
+        }
+
+        /**
+         * @return the sequence number of this version
+         */
+        public long number() {
+            return number;
+        }
+
+        /**
+         * @return the number of states in this version
+         */
+        public int stateCount() {
+            return stateCount;
+        }
+
+        /**
+         * Checks if a state with the given name is final in this version.
+         *
+         * @param name the name of the state
+         * @return true if the state exists and is final
+         */
+        public boolean isFinal(String name) {
+            int id = ids.get(name);
+            return id >= 0 && row(id)[symbols.length] == 1;
+        }
+
+        private int[] row(int state) {
+            return pages[state >>> PAGE_SHIFT][state & (PAGE_SIZE - 1)];
+        }
+
+        private String name(int state) {
+            return names[state >>> PAGE_SHIFT][state & (PAGE_SIZE - 1)];
+        }
+
+        /**
+         * Simulates this version on the input. Behaves exactly like DFA.accepts.
+         *
+         * @param s the input string
+         * @return true if s is accepted, false otherwise
+         */
+        public boolean accepts(CharSequence s) {
+            if (startState < 0) {
+                return false;
+            }
+
+            int[] row = row(startState);
+            for (int i = 0, n = s.length(); i < n; i++) {
+                int symb = indexOf(s.charAt(i));
+                if (symb < 0) {
+                    return false; // Character not in alphabet
+                }
+                int next = row[symb];
+                if (next < 0) {
+                    return false; // No transition defined
+                }
+                row = row(next);
+            }
+            return row[symbols.length] == 1;
+        }
+
+        /**
+         * Builds a mutable DFA equal to this version.
+         *
+         * @return a new DFA
+         */
+        public DFA toDFA() {
+            DFA dfa = new DFA();
+            for (char c : symbols) {
+                dfa.addSigma(c);
+            }
+            for (int s = 0; s < stateCount; s++) {
+                dfa.addState(name(s));
+            }
+            for (int s = 0; s < stateCount; s++) {
+                int[] row = row(s);
+                for (int i = 0; i < symbols.length; i++) {
+                    if (row[i] >= 0) {
+                        dfa.addTransition(name(s), name(row[i]), symbols[i]);
+                    }
+                }
+                if (row[symbols.length] == 1) {
+                    dfa.setFinal(name(s));
+                }
+            }
+            if (startState >= 0) {
+                dfa.setStart(name(startState));
+            }
+            return dfa;
+        }
+    }
+
+    /**
+     * Stages changes on top of a base version. An editor is meant to be
+     * used by a single writer thread and published once.
+     */
+    public final class Editor {
+
+        private final Version base;
+        private int[][][] pages;
+        private String[][] names;
+        private NameIndex ids;
+        private int stateCount;
+        private int startState;
+
+        /** Whether the row and name page directories are already private to this editor */
+        private boolean ownDirectory;
+        private boolean ownNameDirectory;
+
+        /** Pages and rows already copied by this editor */
+        private final Set<Integer> ownPages = new HashSet<>();
+        private final Set<Integer> ownNamePages = new HashSet<>();
+        private final Set<Integer> ownRows = new HashSet<>();
+        private boolean published;
+
+        private Editor(Version base) {
+            this.base = base;
+            this.pages = base.pages;
+            this.names = base.names;
+            this.ids = base.ids;
+            this.stateCount = base.stateCount;
+            this.startState = base.startState;
+        }
+
+        /**
+         * Returns a row that this editor may modify, copying the page
+         * directory, the page and the row on first touch.
+         */
+        private int[] writableRow(int state) {
+            if (!ownDirectory) {
+                pages = pages.clone();
+                ownDirectory = true;
+            }
+            int p = state >>> PAGE_SHIFT;
+            if (ownPages.add(p)) {
+                pages[p] = pages[p] == null ? new int[PAGE_SIZE][] : pages[p].clone();
+            }
+            int[][] page = pages[p];
+            int i = state & (PAGE_SIZE - 1);
+            if (ownRows.add(state)) {
+                page[i] = page[i].clone();
+            }
+            return page[i];
+        }
+
+        private void ensureUnpublished() {
+            if (published) {
+                throw new IllegalStateException("editor already published");
+            }
+        }
+
+        /**
+         * Adds a new state with no transitions.
+         *
+         * @param name the label of the state
+         * @return true if the state was added, false if a state with this name already exists
+         */
+        public boolean addState(String name) {
+            ensureUnpublished();
+            if (ids.get(name) >= 0) {
+                return false;
+            }
+            int id = stateCount++;
+            ids = ids.with(name, id, true);
+
+            if (!ownNameDirectory) {
+                names = names.clone();
+                ownNameDirectory = true;
+            }
+            int p = id >>> PAGE_SHIFT;
+            if (p >= names.length) {
+                names = Arrays.copyOf(names, Math.max(p + 1, names.length * 2));
+            }
+            if (ownNamePages.add(p)) {
+                names[p] = names[p] == null ? new String[PAGE_SIZE] : names[p].clone();
+            }
+            names[p][id & (PAGE_SIZE - 1)] = name;
+
+            if (!ownDirectory) {
+                pages = pages.clone();
+                ownDirectory = true;
+            }
+            if (p >= pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(p + 1, pages.length * 2));
+            }
+            int[] row = new int[base.symbols.length + 1];
+            Arrays.fill(row, 0, base.symbols.length, -1);
+            if (ownPages.add(p)) {
+                pages[p] = pages[p] == null ? new int[PAGE_SIZE][] : pages[p].clone();
+            }
+            pages[p][id & (PAGE_SIZE - 1)] = row;
+            ownRows.add(id);
+            return true;
+        }
+
+        /**
+         * Marks an existing state as final or non-final.
+         *
+         * @param name the label of the state
+         * @param isFinal true to make the state final, false otherwise
+         * @return true if successful, false if no state with such name exists
+         */
+        public boolean setFinal(String name, boolean isFinal) {
+            ensureUnpublished();
+            int id = ids.get(name);
+            if (id < 0) {
+                return false;
+            }
+            writableRow(id)[base.symbols.length] = isFinal ? 1 : 0;
+            return true;
+        }
+
+        /**
+         * Sets the start state.
+         *
+         * @param name the label of the state
+         * @return true if successful, false if no state with such name exists
+         */
+        public boolean setStart(String name) {
+            ensureUnpublished();
+            int id = ids.get(name);
+            if (id < 0) {
+                return false;
+            }
+            startState = id;
+            return true;
+        }
+
+        /**
+         * Adds or replaces a transition.
+         *
+         * @param fromState the label of the source state
+         * @param toState the label of the destination state
+         * @param onSymb the symbol from the alphabet
+         * @return true if successful, false if one of the states doesn't exist or the symbol is not in the alphabet
+         */
+        public boolean addTransition(String fromState, String toState, char onSymb) {
+            ensureUnpublished();
+            int from = ids.get(fromState);
+            int to = ids.get(toState);
+            int symb = base.indexOf(onSymb);
+            if (from < 0 || to < 0 || symb < 0) {
+                return false;
+            }
+            writableRow(from)[symb] = to;
+            return true;
+        }
+
+        /**
+         * Removes a transition.
+         *
+         * @param fromState the label of the source state
+         * @param onSymb the symbol of the transition
+         * @return true if successful, false if the state doesn't exist or has no transition on onSymb
+         */
+        public boolean removeTransition(String fromState, char onSymb) {
+            ensureUnpublished();
+            int from = ids.get(fromState);
+            int symb = base.indexOf(onSymb);
+            if (from < 0 || symb < 0) {
+                return false;
+            }
+            if (pages[from >>> PAGE_SHIFT][from & (PAGE_SIZE - 1)][symb] < 0) {
+                return false;
+            }
+            writableRow(from)[symb] = -1;
+            return true;
+        }
+
+        /**
+         * Publishes the staged changes as a new version, provided no other
+         * writer has published since this editor was created.
+         *
+         * @return the new version, or null if another writer published first
+         */
+        public Version publish() {
+            ensureUnpublished();
+            published = true;
+            Version next = new Version(base.number + 1, base.symbols, base.minSymbol,
+                    base.symbolIndex, pages, names, ids, stateCount, startState);
+            return current.compareAndSet(base, next) ? next : null;
+        }
+    }
+
+    /**
+     * An immutable map from state names to IDs, stored as a hash trie with
+     * 32-way nodes indexed by successive 5-bit slices of the name's hash.
+     * Adding a name copies only the nodes on its path; names whose hashes
+     * are equal share a chain of entries.
+     */
+    private static final class NameIndex {
+
+        static final NameIndex EMPTY = new NameIndex(new Object[32]);
+
+        private final Object[] root;
+
+        private NameIndex(Object[] root) {
+            this.root = root;
+        }
+
+        /**
+         * @return the ID of the name, or -1 if it is not in the index
+         */
+        int get(String name) {
+            int hash = name.hashCode();
+            Object[] node = root;
+            for (int shift = 0; ; shift += 5) {
+                Object slot = node[(hash >>> shift) & 31];
+                if (slot instanceof Object[]) {
+                    node = (Object[]) slot;
+                    continue;
+                }
+                for (Entry e = (Entry) slot; e != null; e = e.next) {
+                    if (e.hash == hash && e.name.equals(name)) {
+                        return e.id;
+                    }
+                }
+                return -1;
+            }
+        }
+
+        /**
+         * Adds a name that is not yet in the index.
+         *
+         * @param copy true to copy the path and leave this index unchanged,
+         *        false to update in place while building a fresh index
+         * @return the index holding the name
+         */
+        NameIndex with(String name, int id, boolean copy) {
+            Entry entry = new Entry(name, name.hashCode(), id, null);
+            Object[] start = copy || this == EMPTY ? root.clone() : root;
+            insert(start, 0, entry, copy);
+            return start == root ? this : new NameIndex(start);
+        }
+
+        private static void insert(Object[] node, int shift, Entry entry, boolean copy) {
+            int i = (entry.hash >>> shift) & 31;
+            Object slot = node[i];
+            if (slot == null) {
+                node[i] = entry;
+            } else if (slot instanceof Object[]) {
+                Object[] child = copy ? ((Object[]) slot).clone() : (Object[]) slot;
+                insert(child, shift + 5, entry, copy);
+                node[i] = child;
+            } else {
+                Entry other = (Entry) slot;
+                if (other.hash == entry.hash) {
+                    node[i] = new Entry(entry.name, entry.hash, entry.id, other);
+                } else {
+                    node[i] = split(other, entry, shift + 5);
+                }
+            }
+        }
+
+        /**
+         * Pushes two entries with different hashes down until their slices differ.
+         */
+        private static Object[] split(Entry a, Entry b, int shift) {
+            Object[] node = new Object[32];
+            int ia = (a.hash >>> shift) & 31;
+            int ib = (b.hash >>> shift) & 31;
+            if (ia == ib) {
+                node[ia] = split(a, b, shift + 5);
+            } else {
+                node[ia] = a;
+                node[ib] = b;
+            }
+            return node;
+        }
+
+        private static final class Entry {
+            final String name;
+            final int hash;
+            final int id;
+            final Entry next;
+
+            Entry(String name, int hash, int id, Entry next) {
+                this.name = name;
+                this.hash = hash;
+                this.id = id;
+                this.next = next;
+            }
+        }
+    }
+}
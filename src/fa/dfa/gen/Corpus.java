@@ -0,0 +1,172 @@
+package fa.dfa.gen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import fa.dfa.CompactDFA;
+
+/**
+ * Generates input strings for a compiled DFA from a seed: strings it
+ * accepts, strings it rejects and uniformly random strings over its
+ * alphabet.
+ *
+ * Accepted strings are random walks that only take transitions from which
+ * a final state is still reachable within the length bound, so every walk
+ * succeeds without backtracking. Rejected strings are found by sampling
+ * random strings and mutated accepted strings, so they may be missing for
+ * automata that accept almost everything.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class Corpus {
+
+    /** Number of samples tried before giving up on a rejected string */
+    private static final int ATTEMPTS = 64;
+
+    /** The automaton */
+    private final CompactDFA dfa;
+
+    /** Source of all random choices */
+    private final Random random;
+
+    /** Length of the shortest path from each state to a final state, or -1 */
+    private final int[] distance;
+
+    /**
+     * @param dfa the automaton to generate inputs for
+     * @param seed the seed of the generator
+     */
+    public Corpus(CompactDFA dfa, long seed) {
+        this.dfa = dfa;
+        this.random = new Random(seed);
+        this.distance = dfa.distanceToFinal();
+    }
+
+    /**
+     * Generates a random accepted string.
+     *
+     * @param maxLen the largest length of the string
+     * @return an accepted string, or null if none has length at most maxLen
+     */
+    public String accepted(int maxLen) {
+        int state = dfa.startState();
+        if (state < 0 || distance[state] < 0 || distance[state] > maxLen) {
+            return null;
+        }
+        int k = dfa.symbolCount();
+        int[] choices = new int[k];
+        StringBuilder sb = new StringBuilder();
+        for (int left = maxLen; ; left--) {
+            int count = 0;
+            for (int i = 0; i < k; i++) {
+                int t = dfa.next(state, i);
+                if (t >= 0 && distance[t] >= 0 && distance[t] < left) {
+                    choices[count++] = i;
+                }
+            }
+            // Stop at a final state with probability 1 / (left + 1), or when the walk cannot go on
+            if (dfa.isFinal(state) && (count == 0 || random.nextInt(left + 1) == 0)) {
+                return sb.toString();
+            }
+            int i = choices[random.nextInt(count)];
+            sb.append(dfa.symbol(i));
+            state = dfa.next(state, i);
+        }
+    }
+
+    /**
+     * Generates a random rejected string over the alphabet of the DFA.
+     *
+     * @param maxLen the largest length of the string
+     * @return a rejected string, or null if none was found
+     */
+    public String rejected(int maxLen) {
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            String s;
+            if (attempt % 2 == 0) {
+                s = random(maxLen);
+            } else {
+                s = accepted(maxLen);
+                if (s == null) {
+                    continue;
+                }
+                s = mutate(s, maxLen);
+            }
+            if (!dfa.accepts(s)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates a uniformly random string over the alphabet of the DFA,
+     * with a length uniform from 0 to maxLen.
+     *
+     * @param maxLen the largest length of the string
+     * @return a string that may or may not be accepted
+     */
+    public String random(int maxLen) {
+        int length = random.nextInt(maxLen + 1);
+        char[] chars = new char[length];
+        for (int j = 0; j < length; j++) {
+            chars[j] = randomSymbol();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param count the number of strings
+     * @param maxLen the largest length of a string
+     * @return up to count accepted strings, fewer only if none exist
+     */
+    public List<String> accepted(int count, int maxLen) {
+        List<String> out = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+            String s = accepted(maxLen);
+            if (s == null) {
+                break;
+            }
+            out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * @param count the number of strings
+     * @param maxLen the largest length of a string
+     * @return up to count rejected strings, fewer if they were hard to find
+     */
+    public List<String> rejected(int count, int maxLen) {
+        List<String> out = new ArrayList<>(count);
+        for (int j = 0; j < count; j++) {
+            String s = rejected(maxLen);
+            if (s == null) {
+                break;
+            }
+            out.add(s);
+        }
+        return out;
+    }
+
+    /**
+     * Replaces, inserts or deletes one random symbol.
+     */
+    private String mutate(String s, int maxLen) {
+        StringBuilder sb = new StringBuilder(s);
+        int op = random.nextInt(3);
+        if (op == 0 && sb.length() > 0) {
+            sb.setCharAt(random.nextInt(sb.length()), randomSymbol());
+        } else if (op == 1 && sb.length() < maxLen) {
+            sb.insert(random.nextInt(sb.length() + 1), randomSymbol());
+        } else if (sb.length() > 0) {
+            sb.deleteCharAt(random.nextInt(sb.length()));
+        }
+        return sb.toString();
+    }
+
+    private char randomSymbol() {
+        return dfa.symbol(random.nextInt(dfa.symbolCount()));
+    }
+}
@@ -0,0 +1,202 @@
+package fa.dfa.gen;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import fa.dfa.DFA;
+import fa.dfa.OffHeapTransitionTable;
+import fa.nfa.NFA;
+
+/**
+ * Generates random automata from a seed, so that a failing stress test
+ * can be reproduced from the seed alone.
+ *
+ * States are numbered 0 to states - 1 and named "q0", "q1", ... with q0
+ * as the start state. Before random transitions are added, every state
+ * after q0 is hooked onto a random earlier state on a random symbol when
+ * that slot is still free, so most states are reachable even when the
+ * density is low. Each remaining slot gets a uniformly random target with
+ * probability density; a density of 1 yields a complete DFA.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class DFAGenerator {
+
+    /** Source of all random choices */
+    private final Random random;
+
+    /**
+     * @param seed the seed of the generator
+     */
+    public DFAGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a random DFA.
+     *
+     * @param states the number of states, at least 1
+     * @param alphabet the symbols of the DFA
+     * @param density the probability that a transition exists, from 0 to 1
+     * @param finalDensity the probability that a state is final, from 0 to 1
+     * @return a new DFA
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public DFA random(int states, String alphabet, double density, double finalDensity) {
+        int k = alphabet.length();
+        int[] delta = transitions(states, k, density);
+        boolean[] finals = finals(states, finalDensity);
+
+        DFA dfa = new DFA();
+        for (int i = 0; i < k; i++) {
+            dfa.addSigma(alphabet.charAt(i));
+        }
+        for (int s = 0; s < states; s++) {
+            dfa.addState(name(s));
+            if (finals[s]) {
+                dfa.setFinal(name(s));
+            }
+        }
+        dfa.setStart(name(0));
+        for (int s = 0; s < states; s++) {
+            for (int i = 0; i < k; i++) {
+                int t = delta[s * k + i];
+                if (t >= 0) {
+                    dfa.addTransition(name(s), name(t), alphabet.charAt(i));
+                }
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Generates a random DFA directly into an off-heap table, for sizes at
+     * which building a DFA object graph is too slow. The same seed and
+     * arguments give the same automaton as random(), with state i of the
+     * table corresponding to state "q" + i.
+     *
+     * @param states the number of states, at least 1
+     * @param alphabet the symbols of the DFA
+     * @param density the probability that a transition exists, from 0 to 1
+     * @param finalDensity the probability that a state is final, from 0 to 1
+     * @return a new table, to be closed by the caller
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public OffHeapTransitionTable randomTable(int states, String alphabet,
+            double density, double finalDensity) {
+        int k = alphabet.length();
+        int[] delta = transitions(states, k, density);
+        boolean[] finals = finals(states, finalDensity);
+
+        OffHeapTransitionTable table = new OffHeapTransitionTable(states, alphabet.toCharArray());
+        int[] row = new int[k];
+        for (int s = 0; s < states; s++) {
+            table.setFinal(s, finals[s]);
+            System.arraycopy(delta, s * k, row, 0, k);
+            table.setRow(s, row);
+        }
+        table.setStart(0);
+        return table;
+    }
+
+    /**
+     * Generates a random NFA. Every (state, symbol) pair, including
+     * NFA.EPSILON, has transitions with probability density, to one to
+     * three random targets.
+     *
+     * @param states the number of states, at least 1
+     * @param alphabet the symbols of the NFA, not containing NFA.EPSILON
+     * @param density the probability that a (state, symbol) pair has transitions
+     * @param finalDensity the probability that a state is final
+     * @return a new NFA
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public NFA randomNFA(int states, String alphabet, double density, double finalDensity) {
+        check(states, alphabet.length(), density);
+        boolean[] finals = finals(states, finalDensity);
+
+        NFA nfa = new NFA();
+        for (int i = 0; i < alphabet.length(); i++) {
+            nfa.addSigma(alphabet.charAt(i));
+        }
+        for (int s = 0; s < states; s++) {
+            nfa.addState(name(s));
+            if (finals[s]) {
+                nfa.setFinal(name(s));
+            }
+        }
+        nfa.setStart(name(0));
+        String symbols = alphabet + NFA.EPSILON;
+        for (int s = 0; s < states; s++) {
+            for (int i = 0; i < symbols.length(); i++) {
+                if (random.nextDouble() >= density) {
+                    continue;
+                }
+                Set<String> targets = new HashSet<>();
+                int count = 1 + random.nextInt(3);
+                for (int j = 0; j < count; j++) {
+                    targets.add(name(random.nextInt(states)));
+                }
+                nfa.addTransition(name(s), targets, symbols.charAt(i));
+            }
+        }
+        return nfa;
+    }
+
+    /**
+     * @param state a state number
+     * @return the name the generators give to that state
+     */
+    public static String name(int state) {
+        return "q" + state;
+    }
+
+    /**
+     * Draws the transition table: a spanning hook for every state after
+     * the first, then random targets for the free slots.
+     *
+     * @return state-major targets, -1 where a transition is missing
+     */
+    private int[] transitions(int states, int k, double density) {
+        check(states, k, density);
+        int[] delta = new int[Math.multiplyExact(states, k)];
+        Arrays.fill(delta, -1);
+        for (int s = 1; s < states; s++) {
+            int slot = random.nextInt(s) * k + random.nextInt(k);
+            if (delta[slot] < 0) {
+                delta[slot] = s;
+            }
+        }
+        for (int slot = 0; slot < delta.length; slot++) {
+            if (delta[slot] < 0 && random.nextDouble() < density) {
+                delta[slot] = random.nextInt(states);
+            }
+        }
+        return delta;
+    }
+
+    private boolean[] finals(int states, double finalDensity) {
+        if (!(finalDensity >= 0 && finalDensity <= 1)) {
+            throw new IllegalArgumentException("final density out of range: " + finalDensity);
+        }
+        boolean[] finals = new boolean[states];
+        for (int s = 0; s < states; s++) {
+            finals[s] = random.nextDouble() < finalDensity;
+        }
+        return finals;
+    }
+
+    private static void check(int states, int k, double density) {
+        if (states < 1) {
+            throw new IllegalArgumentException("need at least one state: " + states);
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("empty alphabet");
+        }
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("density out of range: " + density);
+        }
+    }
+}
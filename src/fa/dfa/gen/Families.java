@@ -0,0 +1,180 @@
+package fa.dfa.gen;
+
+import java.util.Set;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+
+/**
+ * Structured automata whose size and language are known exactly, for
+ * checking results that random automata cannot predict.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public final class Families {
+
+    private Families() {
+    }
+
+    /**
+     * Builds a counter accepting exactly the strings of length n. The DFA
+     * is a chain of states "c0" to "cn" and is partial: no transitions
+     * leave cn. It is minimal.
+     *
+     * @param n the accepted length, at least 0
+     * @param alphabet the symbols of the DFA
+     * @return a new DFA with n + 1 states
+     * @throws IllegalArgumentException if n is negative
+     */
+    public static DFA counter(int n, String alphabet) {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative length: " + n);
+        }
+        DFA dfa = new DFA();
+        for (int i = 0; i < alphabet.length(); i++) {
+            dfa.addSigma(alphabet.charAt(i));
+        }
+        for (int s = 0; s <= n; s++) {
+            dfa.addState("c" + s);
+        }
+        dfa.setStart("c0");
+        dfa.setFinal("c" + n);
+        for (int s = 0; s < n; s++) {
+            for (int i = 0; i < alphabet.length(); i++) {
+                dfa.addTransition("c" + s, "c" + (s + 1), alphabet.charAt(i));
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds the recognizer of numerals in the given base whose value is
+     * divisible by k, reading the most significant digit first. State
+     * "r" + j means the prefix read so far is j modulo k. The empty string
+     * counts as 0 and is accepted. The DFA is complete, and it is minimal
+     * when k and base are coprime.
+     *
+     * @param k the divisor, at least 1
+     * @param base the base, from 2 to 10; the digits are '0' to base - 1
+     * @return a new DFA with k states
+     * @throws IllegalArgumentException if k or base is out of range
+     */
+    public static DFA modK(int k, int base) {
+        if (k < 1) {
+            throw new IllegalArgumentException("divisor must be positive: " + k);
+        }
+        if (base < 2 || base > 10) {
+            throw new IllegalArgumentException("base out of range: " + base);
+        }
+        DFA dfa = new DFA();
+        for (int d = 0; d < base; d++) {
+            dfa.addSigma((char) ('0' + d));
+        }
+        for (int r = 0; r < k; r++) {
+            dfa.addState("r" + r);
+        }
+        dfa.setStart("r0");
+        dfa.setFinal("r0");
+        for (int r = 0; r < k; r++) {
+            for (int d = 0; d < base; d++) {
+                dfa.addTransition("r" + r, "r" + ((r * base + d) % k), (char) ('0' + d));
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds a unary cycle of 2^order states "u0", "u1", ... over the symbol
+     * 'a', where state i is final when bit i of a binary de Bruijn sequence
+     * of that order is 1. Berstel and Carton showed these automata make
+     * Hopcroft's algorithm take its full O(n log n) time. Since every
+     * window of order bits occurs once, no two states are equivalent and
+     * the DFA is minimal.
+     *
+     * @param order the order of the de Bruijn sequence, from 1 to 20
+     * @return a new DFA with 2^order states
+     * @throws IllegalArgumentException if order is out of range
+     */
+    public static DFA hopcroftWorstCase(int order) {
+        if (order < 1 || order > 20) {
+            throw new IllegalArgumentException("order out of range: " + order);
+        }
+        int n = 1 << order;
+        boolean[] bits = deBruijn(order);
+        DFA dfa = new DFA();
+        dfa.addSigma('a');
+        for (int s = 0; s < n; s++) {
+            dfa.addState("u" + s);
+            if (bits[s]) {
+                dfa.setFinal("u" + s);
+            }
+        }
+        dfa.setStart("u0");
+        for (int s = 0; s < n; s++) {
+            dfa.addTransition("u" + s, "u" + ((s + 1) % n), 'a');
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds the NFA over {0, 1} accepting strings whose n-th symbol from
+     * the end is 1. It has n + 1 states but its minimal DFA has 2^n, which
+     * makes it the standard worst case for the subset construction.
+     *
+     * @param n the position from the end, at least 1
+     * @return a new NFA with states "s0" to "sn"
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public static NFA nthFromEnd(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("position must be positive: " + n);
+        }
+        NFA nfa = new NFA();
+        nfa.addSigma('0');
+        nfa.addSigma('1');
+        for (int s = 0; s <= n; s++) {
+            nfa.addState("s" + s);
+        }
+        nfa.setStart("s0");
+        nfa.setFinal("s" + n);
+        nfa.addTransition("s0", Set.of("s0"), '0');
+        nfa.addTransition("s0", Set.of("s0", "s1"), '1');
+        for (int s = 1; s < n; s++) {
+            nfa.addTransition("s" + s, Set.of("s" + (s + 1)), '0');
+            nfa.addTransition("s" + s, Set.of("s" + (s + 1)), '1');
+        }
+        return nfa;
+    }
+
+    /**
+     * Generates the lexicographically least binary de Bruijn sequence of
+     * the given order by concatenating Lyndon words (the FKM algorithm).
+     *
+     * @return 2^order bits
+     */
+    private static boolean[] deBruijn(int order) {
+        boolean[] bits = new boolean[1 << order];
+        int[] a = new int[order + 1];
+        int length = 0;
+        int i = 1;
+        while (true) {
+            if (order % i == 0) {
+                for (int j = 1; j <= i; j++) {
+                    bits[length++] = a[j] == 1;
+                }
+            }
+            // Next Lyndon word prefix in lexicographic order
+            i = order;
+            while (i > 0 && a[i] == 1) {
+                i--;
+            }
+            if (i == 0) {
+                return bits;
+            }
+            a[i]++;
+            for (int j = i + 1; j <= order; j++) {
+                a[j] = a[j - i];
+            }
+        }
+    }
+}
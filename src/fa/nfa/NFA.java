@@ -0,0 +1,390 @@
+package fa.nfa;
+
+import fa.State;
+import fa.dfa.DFA;
+import java.util.*;
+
+/**
+ * Models a nondeterministic finite automaton with epsilon transitions.
+ * A state may move to any number of states on a symbol, and may move
+ * without reading input along transitions labeled NFA.EPSILON.
+ *
+ * Acceptance is decided by simulating all runs at once over bitsets of
+ * state IDs, with the epsilon closure of every state computed up front.
+ * toDFA determinizes the automaton with the subset construction, which
+ * trades a possibly large DFA for one table lookup per input symbol.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+public class NFA implements NFAInterface {
+
+    /** The symbol that labels epsilon transitions; it is never part of sigma */
+    public static final char EPSILON = 'e';
+
+    /** The alphabet (sigma) of the NFA - set of valid input symbols */
+    private Set<Character> sigma;
+
+    /** Set of all states in the NFA */
+    private Set<NFAState> states;
+
+    /** The designated start state of the NFA */
+    private NFAState startState;
+
+    /** Set of all final (accepting) states in the NFA */
+    private Set<NFAState> finalStates;
+
+    /** Map for quick state lookup by name */
+    private Map<String, NFAState> stateMap;
+
+    /** Set to maintain the order in which states were added */
+    private Set<String> stateOrder;
+
+    /** List to maintain the order in which alphabet symbols were added */
+    private List<Character> sigmaOrder;
+
+    /** Lazily built simulation tables, dropped whenever the NFA changes */
+    private NFAProgram program;
+
+    /**
+     * Default constructor that creates an empty NFA.
+     */
+    public NFA() {
+        this.sigma = new HashSet<>();
+        this.states = new HashSet<>();
+        this.finalStates = new HashSet<>();
+        this.stateMap = new HashMap<>();
+        this.startState = null;
+        this.stateOrder = new LinkedHashSet<>();
+        this.sigmaOrder = new ArrayList<>();
+    }
+
+    /**
+     * Adds a new state to the NFA with the given name.
+     *
+     * @param name the unique identifier for the new state
+     * @return true if the state was successfully added, false if a state with this name already exists
+     */
+    @Override
+    public boolean addState(String name) {
+        if (stateMap.containsKey(name)) {
+            return false;
+        }
+
+        NFAState state = new NFAState(name);
+        states.add(state);
+        stateMap.put(name, state);
+        stateOrder.add(name);
+        program = null;
+        return true;
+    }
+
+    /**
+     * Marks an existing state as a final (accepting) state.
+     *
+     * @param name the name of the state to mark as final
+     * @return true if the state exists, false if no such state exists
+     */
+    @Override
+    public boolean setFinal(String name) {
+        NFAState state = stateMap.get(name);
+        if (state == null) {
+            return false;
+        }
+
+        state.setFinal(true);
+        finalStates.add(state);
+        program = null;
+        return true;
+    }
+
+    /**
+     * Sets the start state of the NFA, replacing any previous start state.
+     *
+     * @param name the name of the state to set as the start state
+     * @return true if the state exists, false if no such state exists
+     */
+    @Override
+    public boolean setStart(String name) {
+        NFAState state = stateMap.get(name);
+        if (state == null) {
+            return false;
+        }
+
+        if (startState != null) {
+            startState.setStart(false);
+        }
+
+        state.setStart(true);
+        startState = state;
+        program = null;
+        return true;
+    }
+
+    /**
+     * Adds a symbol to the alphabet. Duplicate symbols are ignored, and so
+     * is EPSILON, which is reserved for epsilon transitions.
+     *
+     * @param symbol the character to add to the alphabet
+     */
+    @Override
+    public void addSigma(char symbol) {
+        if (symbol != EPSILON && !sigma.contains(symbol)) {
+            sigma.add(symbol);
+            sigmaOrder.add(symbol);
+            program = null;
+        }
+    }
+
+    /**
+     * Removes a state together with every transition into or out of it.
+     * Finding the incoming transitions scans all states.
+     *
+     * @param name the name of the state to remove
+     * @return true if the state was removed, false if no such state exists
+     */
+    @Override
+    public boolean removeState(String name) {
+        NFAState state = stateMap.remove(name);
+        if (state == null) {
+            return false;
+        }
+
+        states.remove(state);
+        finalStates.remove(state);
+        stateOrder.remove(name);
+        for (NFAState other : states) {
+            other.removeTransitionsTo(state);
+        }
+        if (state == startState) {
+            startState = null;
+        }
+        program = null;
+        return true;
+    }
+
+    /**
+     * Marks an existing final state as non-accepting.
+     *
+     * @param name the name of the state
+     * @return true if the state exists, false if no such state exists
+     */
+    @Override
+    public boolean unsetFinal(String name) {
+        NFAState state = stateMap.get(name);
+        if (state == null) {
+            return false;
+        }
+
+        state.setFinal(false);
+        finalStates.remove(state);
+        program = null;
+        return true;
+    }
+
+    /**
+     * Removes a symbol from the alphabet together with every transition on it.
+     *
+     * @param symbol the character to remove from the alphabet
+     * @return true if the symbol was removed, false if it was not in the alphabet
+     */
+    @Override
+    public boolean removeSigma(char symbol) {
+        if (!sigma.remove(symbol)) {
+            return false;
+        }
+
+        sigmaOrder.remove(Character.valueOf(symbol));
+        for (NFAState state : states) {
+            state.removeTransitions(symbol);
+        }
+        program = null;
+        return true;
+    }
+
+    /**
+     * Adds transitions from one state to each of a set of states.
+     *
+     * @param fromState the name of the source state
+     * @param toStates the names of the destination states
+     * @param onSymb a symbol of the alphabet, or EPSILON
+     * @return true if the transitions were added, false if a state doesn't exist or the symbol isn't in the alphabet
+     */
+    @Override
+    public boolean addTransition(String fromState, Set<String> toStates, char onSymb) {
+        NFAState from = stateMap.get(fromState);
+        if (from == null || (onSymb != EPSILON && !sigma.contains(onSymb))) {
+            return false;
+        }
+        for (String name : toStates) {
+            if (!stateMap.containsKey(name)) {
+                return false;
+            }
+        }
+
+        for (String name : toStates) {
+            from.addTransition(onSymb, stateMap.get(name));
+        }
+        program = null;
+        return true;
+    }
+
+    /**
+     * Simulates the NFA on the input by tracking the set of all states
+     * the NFA could be in after each symbol.
+     *
+     * @param s the input string
+     * @return true if some run of the NFA on s ends in a final state
+     */
+    @Override
+    public boolean accepts(String s) {
+        return accepts((CharSequence) s);
+    }
+
+    /**
+     * Simulates the NFA on the input by tracking the set of all states
+     * the NFA could be in after each symbol.
+     *
+     * @param s the input characters
+     * @return true if some run of the NFA on s ends in a final state
+     */
+    public boolean accepts(CharSequence s) {
+        return program().accepts(s);
+    }
+
+    /**
+     * Returns a copy of the alphabet (sigma) of the NFA, without EPSILON.
+     *
+     * @return a Set containing all symbols in the NFA's alphabet
+     */
+    @Override
+    public Set<Character> getSigma() {
+        return new HashSet<>(sigma);
+    }
+
+    /**
+     * Retrieves a state by its name.
+     *
+     * @param name the name of the state to retrieve
+     * @return the State object with the given name, or null if no such state exists
+     */
+    @Override
+    public State getState(String name) {
+        return stateMap.get(name);
+    }
+
+    /**
+     * Checks if a state with the given name is a final state.
+     *
+     * @param name the name of the state to check
+     * @return true if the state exists and is final, false otherwise
+     */
+    @Override
+    public boolean isFinal(String name) {
+        NFAState state = stateMap.get(name);
+        return state != null && state.isFinal();
+    }
+
+    /**
+     * Checks if a state with the given name is the start state.
+     *
+     * @param name the name of the state to check
+     * @return true if the state exists and is the start state, false otherwise
+     */
+    @Override
+    public boolean isStart(String name) {
+        NFAState state = stateMap.get(name);
+        return state != null && state.isStart();
+    }
+
+    /**
+     * Returns the states reached from a state on a symbol, without
+     * following epsilon transitions.
+     *
+     * @param from the source state
+     * @param onSymb the symbol of the transitions, or EPSILON
+     * @return a copy of the set of destination states
+     */
+    @Override
+    public Set<NFAState> getToState(NFAState from, char onSymb) {
+        return from.getTo(onSymb);
+    }
+
+    /**
+     * Computes the epsilon closure of a state with a depth-first search
+     * over epsilon transitions. The closure always contains s itself.
+     *
+     * @param s the state to start from
+     * @return the states reachable from s using only epsilon transitions
+     */
+    @Override
+    public Set<NFAState> eClosure(NFAState s) {
+        Set<NFAState> closure = new HashSet<>();
+        Deque<NFAState> stack = new ArrayDeque<>();
+        closure.add(s);
+        stack.push(s);
+        while (!stack.isEmpty()) {
+            for (NFAState next : stack.pop().getTo(EPSILON)) {
+                if (closure.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Checks if the NFA is deterministic: no epsilon transitions and at
+     * most one destination per state and symbol.
+     *
+     * @return true if the NFA is also a DFA
+     */
+    @Override
+    public boolean isDFA() {
+        for (NFAState state : states) {
+            for (Map.Entry<Character, Set<NFAState>> entry : state.getTransitions().entrySet()) {
+                if (entry.getKey() == EPSILON || entry.getValue().size() > 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds an equivalent DFA with the subset construction.
+     *
+     * @return a new DFA accepting the same language as this NFA
+     */
+    @Override
+    public DFA toDFA() {
+        return program().toDFA(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Determinizes the NFA unless the DFA would have more than maxStates
+     * states. This lets callers choose between simulating the NFA and
+     * running a DFA depending on how large the DFA turns out to be.
+     *
+     * @param maxStates the largest acceptable number of DFA states
+     * @return the equivalent DFA, or null if it has more than maxStates states
+     */
+    public DFA toDFA(int maxStates) {
+        return program().toDFA(maxStates);
+    }
+
+    /**
+     * Returns the simulation tables, building them if the NFA changed.
+     */
+    private NFAProgram program() {
+        NFAProgram result = program;
+        if (result == null) {
+            List<NFAState> ordered = new ArrayList<>();
+            for (String name : stateOrder) {
+                ordered.add(stateMap.get(name));
+            }
+            result = new NFAProgram(ordered, sigmaOrder, startState);
+            program = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package fa.nfa;
+
+import java.util.Set;
+
+import fa.FAInterface;
+import fa.dfa.DFA;
+
+
+public interface NFAInterface extends FAInterface{
+
+	/**
+	 * Adds the transition to the NFA's delta data structure
+	 * @param fromState is the label of the state where the transition starts
+	 * @param toStates is the set of labels of the states where the transition ends
+	 * @param onSymb is the symbol from the NFA's alphabet, or NFA.EPSILON
+	 * @return true if successful and false if one of the states don't exist or the symbol in not in the alphabet
+	 */
+	public boolean addTransition(String fromState, Set<String> toStates, char onSymb);
+	
+	
+	/**
+	 * Return delta entries
+	 * @param from - the source state
+	 * @param onSymb - the label of the transition
+	 * @return a set of sink states
+	 */
+	public Set<NFAState> getToState(NFAState from, char onSymb);
+	
+	
+	/**
+	 * Traverses all epsilon transitions and determine
+	 * what states can be reached from s through e
+	 * @param s the state to start from
+	 * @return set of states that can be reached from s on epsilon trans.
+	 */
+	public Set<NFAState> eClosure(NFAState s);
+	
+	
+	/**
+	 * Determines if the NFA is a DFA: it has no epsilon transitions
+	 * and at most one transition per state and symbol
+	 * @return true if the NFA is also a DFA
+	 */
+	public boolean isDFA();
+	
+	
+	/**
+	 * Builds an equivalent DFA with the subset construction.
+	 * Only subsets reachable from the start state are created.
+	 * @return a new DFA accepting the same language
+	 */
+	public DFA toDFA();
+
+}
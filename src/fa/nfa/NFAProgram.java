@@ -0,0 +1,285 @@
+package fa.nfa;
+
+import fa.SubsetName;
+import fa.dfa.DFA;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Integer tables for simulating and determinizing an NFA. States are
+ * numbered in the order they were added and sets of states are bitsets
+ * stored in long arrays, one bit per state. The epsilon closure of every
+ * state is computed once, so a simulation step is a union of closures.
+ *
+ * @author Schylar Davis / Daniel Aguilar
+ */
+final class NFAProgram {
+
+    /** State names, indexed by state ID */
+    private final String[] names;
+
+    /** Alphabet, in symbol index order */
+    private final char[] symbols;
+
+    /** Smallest character in the alphabet, the base of symbolIndex */
+    private final char minSymbol;
+
+    /** Maps (c - minSymbol) to the symbol index of c, or -1 */
+    private final int[] symbolIndex;
+
+    /** Number of longs in a state bitset */
+    private final int words;
+
+    /** delta[s][a] lists the targets of state s on symbol index a */
+    private final int[][][] delta;
+
+    /** closure[s] is the epsilon closure of state s */
+    private final long[][] closure;
+
+    /** Bitset of the final states */
+    private final long[] finals;
+
+    /** Epsilon closure of the start state, or null if none has been set */
+    private final long[] start;
+
+    NFAProgram(List<NFAState> states, List<Character> sigmaOrder, NFAState startState) {
+        int n = states.size();
+        int k = sigmaOrder.size();
+        this.words = (n + 63) >>> 6;
+        this.names = new String[n];
+        this.symbols = new char[k];
+
+        Map<NFAState, Integer> ids = new HashMap<>();
+        for (int s = 0; s < n; s++) {
+            names[s] = states.get(s).getName();
+            ids.put(states.get(s), s);
+        }
+
+        char min = Character.MAX_VALUE;
+        char max = Character.MIN_VALUE;
+        for (int i = 0; i < k; i++) {
+            symbols[i] = sigmaOrder.get(i);
+            if (symbols[i] < min) min = symbols[i];
+            if (symbols[i] > max) max = symbols[i];
+        }
+        this.minSymbol = k == 0 ? 0 : min;
+        this.symbolIndex = new int[k == 0 ? 0 : max - min + 1];
+        Arrays.fill(symbolIndex, -1);
+        for (int i = 0; i < k; i++) {
+            symbolIndex[symbols[i] - minSymbol] = i;
+        }
+
+        this.delta = new int[n][k][];
+        int[][] epsilon = new int[n][];
+        this.finals = new long[words];
+        for (int s = 0; s < n; s++) {
+            NFAState state = states.get(s);
+            for (int i = 0; i < k; i++) {
+                delta[s][i] = toIds(state.getTo(symbols[i]), ids);
+            }
+            epsilon[s] = toIds(state.getTo(NFA.EPSILON), ids);
+            if (state.isFinal()) {
+                finals[s >>> 6] |= 1L << s;
+            }
+        }
+
+        // Depth-first search over epsilon edges from every state
+        this.closure = new long[n][];
+        int[] stack = new int[n];
+        for (int s = 0; s < n; s++) {
+            long[] set = new long[words];
+            int top = 0;
+            set[s >>> 6] |= 1L << s;
+            stack[top++] = s;
+            while (top > 0) {
+                int u = stack[--top];
+                for (int v : epsilon[u]) {
+                    if ((set[v >>> 6] & (1L << v)) == 0) {
+                        set[v >>> 6] |= 1L << v;
+                        stack[top++] = v;
+                    }
+                }
+            }
+            closure[s] = set;
+        }
+
+        this.start = startState == null ? null : closure[ids.get(startState)].clone();
+    }
+
+    private static int[] toIds(Set<NFAState> states, Map<NFAState, Integer> ids) {
+        int[] result = new int[states.size()];
+        int i = 0;
+        for (NFAState state : states) {
+            result[i++] = ids.get(state);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Computes the set of states reachable from a set of states by reading
+     * one symbol and then following epsilon transitions.
+     *
+     * @param from the current set of states
+     * @param symb the symbol index
+     * @param into receives the result; cleared first
+     * @return true if the result is not empty
+     */
+    private boolean step(long[] from, int symb, long[] into) {
+        Arrays.fill(into, 0);
+        boolean any = false;
+        for (int w = 0; w < words; w++) {
+            long bits = from[w];
+            while (bits != 0) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int t : delta[s][symb]) {
+                    long[] c = closure[t];
+                    for (int x = 0; x < words; x++) {
+                        into[x] |= c[x];
+                    }
+                    any = true;
+                }
+            }
+        }
+        return any;
+    }
+
+    private int indexOf(char c) {
+        int slot = c - minSymbol;
+        return slot < 0 || slot >= symbolIndex.length ? -1 : symbolIndex[slot];
+    }
+
+    private boolean containsFinal(long[] set) {
+        for (int w = 0; w < words; w++) {
+            if ((set[w] & finals[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Simulates the NFA on the input.
+     */
+    boolean accepts(CharSequence s) {
+        if (start == null) {
+            return false;
+        }
+        long[] current = start.clone();
+        long[] next = new long[words];
+        for (int i = 0, n = s.length(); i < n; i++) {
+            int symb = indexOf(s.charAt(i));
+            if (symb < 0 || !step(current, symb, next)) {
+                return false;
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return containsFinal(current);
+    }
+
+    /**
+     * Builds the reachable part of the subset construction. Each DFA state
+     * is named after the NFA states it contains, e.g. "[a, c]", escaped as
+     * described in SubsetName so that different subsets never share a
+     * name. Empty subsets are left out, so the DFA has no transition where
+     * every run of the NFA dies.
+     *
+     * @return the DFA, or null if it would have more than maxStates states
+     */
+    DFA toDFA(int maxStates) {
+        DFA dfa = new DFA();
+        for (char c : symbols) {
+            dfa.addSigma(c);
+        }
+        if (start == null) {
+            return dfa;
+        }
+
+        Map<SubsetKey, String> seen = new HashMap<>();
+        ArrayDeque<long[]> work = new ArrayDeque<>();
+        String startName = subsetName(start);
+        seen.put(new SubsetKey(start), startName);
+        addState(dfa, startName);
+        dfa.setStart(startName);
+        work.add(start);
+
+        while (!work.isEmpty()) {
+            long[] set = work.poll();
+            String from = seen.get(new SubsetKey(set));
+            if (containsFinal(set)) {
+                dfa.setFinal(from);
+            }
+            for (int i = 0; i < symbols.length; i++) {
+                long[] next = new long[words];
+                if (!step(set, i, next)) {
+                    continue;
+                }
+                SubsetKey key = new SubsetKey(next);
+                String to = seen.get(key);
+                if (to == null) {
+                    if (seen.size() >= maxStates) {
+                        return null;
+                    }
+                    to = subsetName(next);
+                    seen.put(key, to);
+                    addState(dfa, to);
+                    work.add(next);
+                }
+                dfa.addTransition(from, to, symbols[i]);
+            }
+        }
+        return dfa;
+    }
+
+    private String subsetName(long[] set) {
+        SubsetName name = new SubsetName();
+        for (int w = 0; w < words; w++) {
+            long bits = set[w];
+            while (bits != 0) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                name.add(names[s]);
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Adds a subset state, failing loudly rather than merging two subsets.
+     */
+    private static void addState(DFA dfa, String name) {
+        if (!dfa.addState(name)) {
+            throw new IllegalStateException("duplicate subset state name: " + name);
+        }
+    }
+
+    /**
+     * Hash key wrapping a state bitset, compared by content.
+     */
+    private static final class SubsetKey {
+        private final long[] set;
+        private final int hash;
+
+        SubsetKey(long[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SubsetKey && Arrays.equals(set, ((SubsetKey) o).set);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package fa.nfa;
+
+import fa.State;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class NFAState extends State {
+    
+    private boolean isFinal;
+    private boolean isStart;
+    private Map<Character, Set<NFAState>> transitions;
+    
+    public NFAState(String name) {
+        super(name);
+        this.isFinal = false;
+        this.isStart = false;
+        this.transitions = new HashMap<>();
+    }
+    
+    /**
+     * Add a transition from this state to another state on a given symbol.
+     * Transitions accumulate: a state may move to several states on one symbol.
+     * @param onSymb the symbol that triggers the transition, or NFA.EPSILON
+     * @param toState the destination state
+     */
+    public void addTransition(char onSymb, NFAState toState) {
+        transitions.computeIfAbsent(onSymb, k -> new HashSet<>()).add(toState);
+    }
+    
+    /**
+     * Remove all transitions on a given symbol
+     * @param onSymb the symbol of the transitions
+     * @return true if there was at least one transition on onSymb
+     */
+    public boolean removeTransitions(char onSymb) {
+        return transitions.remove(onSymb) != null;
+    }
+    
+    /**
+     * Remove every transition into a given state
+     * @param toState the destination state
+     */
+    public void removeTransitionsTo(NFAState toState) {
+        transitions.values().removeIf(to -> to.remove(toState) && to.isEmpty());
+    }
+    
+    /**
+     * Get the destination states for a given symbol
+     * @param symb the input symbol
+     * @return a copy of the destination states, empty if there are none
+     */
+    public Set<NFAState> getTo(char symb) {
+        Set<NFAState> to = transitions.get(symb);
+        return to == null ? new HashSet<>() : new HashSet<>(to);
+    }
+    
+    /**
+     * Mark this state as final
+     * @param isFinal true to mark as final, false otherwise
+     */
+    public void setFinal(boolean isFinal) {
+        this.isFinal = isFinal;
+    }
+    
+    /**
+     * Check if this state is final
+     * @return true if this state is final
+     */
+    public boolean isFinal() {
+        return isFinal;
+    }
+    
+    /**
+     * Mark this state as start state
+     * @param isStart true to mark as start, false otherwise
+     */
+    public void setStart(boolean isStart) {
+        this.isStart = isStart;
+    }
+    
+    /**
+     * Check if this state is the start state
+     * @return true if this state is the start state
+     */
+    public boolean isStart() {
+        return isStart;
+    }
+    
+    /**
+     * Get all transitions from this state
+     * @return map of symbol to the set of destination states
+     */
+    public Map<Character, Set<NFAState>> getTransitions() {
+        Map<Character, Set<NFAState>> copy = new HashMap<>();
+        for (Map.Entry<Character, Set<NFAState>> entry : transitions.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return copy;
+    }
+}
@@ -3,11 +3,39 @@ package test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
+import fa.dfa.BackwardMatcher;
+import fa.dfa.CompactDFA;
 import fa.dfa.DFA;
+import fa.dfa.DFACache;
+import fa.dfa.DFARegistry;
+import fa.dfa.InterleavedMatcher;
+import fa.dfa.Lexer;
+import fa.dfa.Matcher;
+import fa.dfa.MatcherGenerator;
+import fa.dfa.OffHeapTransitionTable;
+import fa.dfa.StrideDFA;
+import fa.dfa.VersionedDFA;
+import fa.dfa.gen.DFAGenerator;
 
 public class DFATest {
 	
@@ -407,4 +435,1049 @@ public void test3_6() {
 	System.out.println("dfa3Swap accept pass");
 }
 	
+
+//------------------- off-heap table tests ----------------------//
+@Test
+public void testOffHeap_1() {
+	try (OffHeapTransitionTable table = OffHeapTransitionTable.of(dfa1())) {
+		assertEquals(2, table.stateCount());
+		assertEquals(0, table.getStart());
+		assertTrue(table.isFinal(1));
+		assertEquals(1, table.getTo(0, '1'));
+		assertEquals(-1, table.getTo(0, '2'));
+		
+		assertFalse(table.accepts("0"));
+		assertTrue(table.accepts("1"));
+		assertFalse(table.accepts("00"));
+		assertTrue(table.accepts("101"));
+		assertFalse(table.accepts("e"));
+	}
+	System.out.println("dfa1 off-heap accept pass");
+}
+
+@Test
+public void testOffHeap_2() {
+	DFA dfa = dfa3();
+	OffHeapTransitionTable table = OffHeapTransitionTable.of(dfa);
+	for (String s : new String[] {"121212121", "12221212121", "12", "2", "1212", "", "3"}) {
+		assertEquals(dfa.accepts(s), table.accepts(s));
+	}
+	table.close();
+	try {
+		table.accepts("1");
+		fail("closed table must not be readable");
+	} catch (IllegalStateException e) {
+		// expected
+	}
+	System.out.println("dfa3 off-heap accept pass");
+}
+
+@Test
+public void testOffHeap_3() throws IOException {
+	//built row by row, without a DFA on the heap
+	OffHeapTransitionTable table = new OffHeapTransitionTable(2, new char[] {'0', '1'});
+	assertTrue(table.setRow(0, new int[] {0, 1}));
+	assertTrue(table.setRow(1, new int[] {0, 1}));
+	assertFalse(table.setRow(2, new int[] {0, 1}));
+	assertFalse(table.setRow(0, new int[] {0}));
+	assertFalse(table.setRow(0, new int[] {0, 2}));
+	assertTrue(table.setFinal(1, true));
+	assertTrue(table.setStart(0));
+	
+	//streamed out and back in
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	table.write(Channels.newChannel(bytes));
+	table.close();
+	try (OffHeapTransitionTable loaded = OffHeapTransitionTable.read(
+			Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))) {
+		DFA dfa = dfa1();
+		for (String s : allStrings("01", 6)) {
+			assertEquals(s, dfa.accepts(s), loaded.accepts(s));
+		}
+		assertEquals(0, loaded.getStart());
+	}
+	
+	//truncated and out of range data are rejected
+	byte[] data = bytes.toByteArray();
+	try {
+		OffHeapTransitionTable.read(Channels.newChannel(
+				new ByteArrayInputStream(Arrays.copyOf(data, data.length - 1))));
+		fail("truncated table must be rejected");
+	} catch (IOException e) {
+		// expected
+	}
+	data[data.length - 1] = 0x7f;
+	data[data.length - 4] = 0x7f;
+	try {
+		OffHeapTransitionTable.read(Channels.newChannel(new ByteArrayInputStream(data)));
+		fail("bad target must be rejected");
+	} catch (IOException e) {
+		// expected
+	}
+	
+	try {
+		table.setRow(0, new int[] {0, 1});
+		fail("closed table must not be writable");
+	} catch (IllegalStateException e) {
+		// expected
+	}
+	System.out.println("off-heap stream pass");
+}
+	
+//------------------- compact table tests ----------------------//
+@Test
+public void testCompact_1() {
+	DFA dfa = dfa3();
+	CompactDFA compact = dfa.compile();
+	assertEquals(7, compact.stateCount());
+	//B, D, E and C, F, G have identical rows
+	assertEquals(3, compact.rowCount());
+	assertEquals(7.0 / 3, compact.dedupRatio(), 1e-9);
+	assertEquals(compact.rowOf(1), compact.rowOf(3));
+	assertTrue(compact.accepts("121212121"));
+	assertTrue(compact.accepts("12221212121"));
+	assertFalse(compact.accepts("12"));
+	assertFalse(compact.accepts("2"));
+	assertFalse(compact.accepts("1212"));
+	System.out.println("dfa3 compact accept pass");
+}
+
+@Test
+public void testCompact_2() {
+	DFA dfa = dfa2();
+	CompactDFA compact = dfa.compile();
+	assertEquals(4, compact.rowCount());
+	assertEquals(1.0, compact.dedupRatio(), 1e-9);
+	for (String s : new String[] {"010", "00", "101", "111011111111110", "1110111111111010", "", "2"}) {
+		assertEquals(dfa.accepts(s), compact.accepts(s));
+	}
+	System.out.println("dfa2 compact accept pass");
+}
+	
+//------------------- removal tests ----------------------//
+@Test
+public void testRemove_1() {
+	DFA dfa = dfa1();
+	assertTrue(dfa.removeTransition("a", '1'));
+	assertFalse(dfa.removeTransition("a", '1'));
+	assertFalse(dfa.removeTransition("c", '0'));
+	assertFalse(dfa.accepts("1"));
+	assertFalse(dfa.compile().accepts("01"));
+	assertTrue(dfa.addTransition("a", "b", '1'));
+	assertTrue(dfa.accepts("011"));
+	assertTrue(dfa.compile().accepts("011"));
+	
+	assertTrue(dfa.unsetFinal("b"));
+	assertFalse(dfa.unsetFinal("c"));
+	assertFalse(dfa.isFinal("b"));
+	assertFalse(dfa.accepts("011"));
+	System.out.println("dfa1 remove transition pass");
+}
+
+@Test
+public void testRemove_2() {
+	DFA dfa = dfa3();
+	assertTrue(dfa.removeState("E"));
+	assertFalse(dfa.removeState("E"));
+	assertNull(dfa.getState("E"));
+	//B and D lost their transitions on 2
+	assertTrue(dfa.accepts("11"));
+	assertFalse(dfa.accepts("12"));
+	assertTrue(dfa.accepts("212"));
+	
+	String expStr = "Q={GDABCF}\n"
+			+ "Sigma = {2 1}\n"
+			+ "delta =\n"
+			+ "	2	1\n"
+			+ "G	G	F\n"
+			+ "D	-	D\n"
+			+ "A	C	B\n"
+			+ "B	-	D\n"
+			+ "C	G	F\n"
+			+ "F	G	F\n"
+			+ "q0 = A\n"
+			+ "F = {G D}\n";
+	assertEquals(expStr.replaceAll("\\s", ""), dfa.toString().replaceAll("\\s", ""));
+	
+	assertTrue(dfa.removeState("A"));
+	assertFalse(dfa.accepts("11"));
+	System.out.println("dfa3 remove state pass");
+}
+
+@Test
+public void testRemove_3() {
+	DFA dfa = dfa2();
+	assertTrue(dfa.removeSigma('1'));
+	assertFalse(dfa.removeSigma('1'));
+	assertEquals(Set.of('0'), dfa.getSigma());
+	assertTrue(dfa.accepts("00"));
+	assertFalse(dfa.accepts("01"));
+	assertFalse(dfa.addTransition("0", "1", '1'));
+	System.out.println("dfa2 remove sigma pass");
+}
+
+//the cached compiled form behind trace and acceptsAll matches a fresh compile
+private void checkCompiled(DFA dfa) {
+	StringBuilder alphabet = new StringBuilder("x");
+	for (char c : dfa.getSigma()) {
+		alphabet.append(c);
+	}
+	List<String> inputs = allStrings(alphabet.toString(), 3);
+	boolean[] batch = dfa.acceptsAll(inputs.toArray(new CharSequence[0]));
+	CompactDFA fresh = dfa.compile();
+	int[] patched = new int[3];
+	int[] expected = new int[3];
+	for (int i = 0; i < inputs.size(); i++) {
+		String s = inputs.get(i);
+		assertEquals(s, dfa.accepts(s), batch[i]);
+		assertEquals(s, fresh.trace(s, expected), dfa.trace(s, patched));
+		assertArrayEquals(s, expected, patched);
+	}
+}
+
+@Test
+public void testRemove_4() {
+	//random edits to a compiled DFA, checking the patched compiled form
+	Random random = new Random(28);
+	DFA dfa = new DFAGenerator(28).random(8, "abc", 0.7, 0.4);
+	int next = 8;
+	String symbols = "abcd";
+	for (int step = 0; step < 300; step++) {
+		String p = DFAGenerator.name(random.nextInt(next));
+		String q = DFAGenerator.name(random.nextInt(next));
+		char c = symbols.charAt(random.nextInt(symbols.length()));
+		switch (random.nextInt(9)) {
+			case 0: dfa.addState(DFAGenerator.name(next++)); break;
+			case 1: dfa.removeState(p); break;
+			case 2: dfa.setFinal(p); break;
+			case 3: dfa.unsetFinal(p); break;
+			case 4: dfa.setStart(p); break;
+			case 5: dfa.removeTransition(p, c); break;
+			case 6: dfa.addSigma(c); break;
+			case 7: dfa.removeSigma(c); break;
+			default: dfa.addTransition(p, q, c); break;
+		}
+		if (step % 40 == 0) {
+			//a long series of edits between uses
+			for (int i = 0; i < 30; i++) {
+				dfa.addTransition(p, DFAGenerator.name(random.nextInt(next)), c);
+			}
+		}
+		checkCompiled(dfa);
+	}
+	System.out.println("patched compile pass");
+}
+	
+//------------------- versioned dfa tests ----------------------//
+@Test
+public void testVersioned_1() {
+	VersionedDFA live = new VersionedDFA(dfa1());
+	VersionedDFA.Version v0 = live.current();
+	assertTrue(live.accepts("1"));
+	
+	VersionedDFA.Editor editor = live.edit();
+	assertTrue(editor.addState("c"));
+	assertFalse(editor.addState("a"));
+	assertTrue(editor.setFinal("c", true));
+	assertTrue(editor.addTransition("a", "c", '0'));
+	assertFalse(editor.addTransition("a", "d", '0'));
+	assertTrue(editor.removeTransition("b", '1'));
+	//nothing is visible before publishing
+	assertFalse(live.accepts("0"));
+	
+	VersionedDFA.Version v1 = editor.publish();
+	assertNotNull(v1);
+	assertEquals(1, v1.number());
+	assertTrue(live.accepts("0"));
+	assertFalse(live.accepts("11"));
+	assertTrue(v1.isFinal("c"));
+	
+	//the old version is unchanged
+	assertFalse(v0.accepts("0"));
+	assertTrue(v0.accepts("11"));
+	assertEquals(2, v0.stateCount());
+	
+	assertTrue(v1.toDFA().accepts("0"));
+	System.out.println("dfa1 versioned update pass");
+}
+
+@Test
+public void testVersioned_2() {
+	VersionedDFA live = new VersionedDFA(dfa2());
+	VersionedDFA.Editor late = live.edit();
+	live.update(e -> e.setFinal("2", true));
+	assertTrue(late.setFinal("1", true));
+	//the stale editor loses the race
+	assertNull(late.publish());
+	assertTrue(live.accepts("01"));
+	assertFalse(live.accepts("0"));
+	System.out.println("dfa2 versioned race pass");
+}
+
+@Test
+public void testVersioned_3() throws InterruptedException {
+	VersionedDFA live = new VersionedDFA(dfa3());
+	AtomicBoolean done = new AtomicBoolean();
+	AtomicBoolean inconsistent = new AtomicBoolean();
+	Thread reader = new Thread(() -> {
+		while (!done.get()) {
+			VersionedDFA.Version v = live.current();
+			//writers always flip both rows together
+			if (v.accepts("11") != v.accepts("22")) {
+				inconsistent.set(true);
+			}
+		}
+	});
+	reader.start();
+	for (int i = 0; i < 2000; i++) {
+		boolean flip = i % 2 == 0;
+		live.update(e -> {
+			e.setFinal("D", !flip);
+			e.setFinal("G", !flip);
+		});
+	}
+	done.set(true);
+	reader.join();
+	assertFalse(inconsistent.get());
+	System.out.println("dfa3 versioned concurrent pass");
+}
+
+@Test
+public void testVersioned_4() {
+	VersionedDFA live = new VersionedDFA(dfa1());
+	//one state per version, crossing several pages, with colliding hashes
+	assertEquals("Aa".hashCode(), "BB".hashCode());
+	List<VersionedDFA.Version> versions = new ArrayList<>();
+	for (int i = 0; i < 300; i++) {
+		String name = i == 150 ? "Aa" : i == 151 ? "BB" : "s" + i;
+		versions.add(live.update(e -> {
+			assertTrue(e.addState(name));
+			assertTrue(e.setFinal(name, true));
+			assertTrue(e.addTransition(name, "a", '0'));
+		}));
+	}
+	VersionedDFA.Version last = versions.get(versions.size() - 1);
+	assertEquals(302, last.stateCount());
+	assertTrue(last.isFinal("Aa"));
+	assertTrue(last.isFinal("BB"));
+	assertTrue(last.isFinal("s299"));
+	//older versions do not see later states
+	assertFalse(versions.get(150).isFinal("BB"));
+	assertTrue(versions.get(151).isFinal("BB"));
+	assertFalse(versions.get(10).isFinal("s11"));
+	assertEquals(13, versions.get(10).stateCount());
+	assertFalse(live.edit().addState("BB"));
+	
+	DFA dfa = last.toDFA();
+	assertTrue(dfa.isFinal("Aa"));
+	assertTrue(dfa.isFinal("s0"));
+	System.out.println("versioned add state pass");
+}
+	
+//------------------- language analysis tests ----------------------//
+@Test
+public void testAnalysis_1() {
+	DFA dfa = dfa1();
+	assertEquals("1", dfa.shortestAccepted());
+	assertFalse(dfa.isEmpty());
+	assertFalse(dfa.isFinite());
+	//strings ending in 1
+	assertEquals(BigInteger.ONE, dfa.countAccepted(1));
+	assertEquals(BigInteger.valueOf(512), dfa.countAccepted(10));
+	assertEquals(BigInteger.ONE.shiftLeft(99), dfa.countAccepted(100));
+	assertEquals(BigInteger.ONE.shiftLeft(99).mod(BigInteger.valueOf(1000000007)).longValue(),
+			dfa.countAccepted(100, 1000000007));
+	
+	List<String> all = new ArrayList<>();
+	dfa.enumerate(3).forEachRemaining(all::add);
+	assertEquals(List.of("1", "01", "11", "001", "011", "101", "111"), all);
+	System.out.println("dfa1 analysis pass");
+}
+
+@Test
+public void testAnalysis_2() {
+	DFA dfa = dfa2();
+	assertEquals("00", dfa.shortestAccepted());
+	assertEquals(BigInteger.ZERO, dfa.countAccepted(1));
+	assertEquals(BigInteger.ONE, dfa.countAccepted(2));
+	
+	Iterator<String> it = dfa.enumerate(12);
+	int count = 0;
+	while (it.hasNext()) {
+		String s = it.next();
+		assertTrue(dfa.accepts(s));
+		count++;
+	}
+	BigInteger expected = BigInteger.ZERO;
+	for (int i = 0; i <= 12; i++) {
+		expected = expected.add(dfa.countAccepted(i));
+	}
+	assertEquals(expected.intValue(), count);
+	System.out.println("dfa2 analysis pass");
+}
+
+@Test
+public void testAnalysis_3() {
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addSigma('b');
+	assertTrue(dfa.isEmpty());
+	assertNull(dfa.shortestAccepted());
+	assertFalse(dfa.enumerate(5).hasNext());
+	
+	assertTrue(dfa.addState("p"));
+	assertTrue(dfa.addState("q"));
+	assertTrue(dfa.addState("r"));
+	assertTrue(dfa.setStart("p"));
+	assertTrue(dfa.setFinal("q"));
+	assertTrue(dfa.addTransition("p", "q", 'b'));
+	assertTrue(dfa.addTransition("p", "q", 'a'));
+	assertTrue(dfa.addTransition("q", "r", 'a'));
+	assertTrue(dfa.addTransition("r", "r", 'a'));
+	//the loop on r cannot lead to acceptance
+	assertTrue(dfa.isFinite());
+	assertEquals("a", dfa.shortestAccepted());
+	assertTrue(dfa.setFinal("r"));
+	assertFalse(dfa.isFinite());
+	System.out.println("finite analysis pass");
+}
+
+@Test
+public void testAnalysis_4() {
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addSigma('b');
+	assertTrue(dfa.addState("p"));
+	assertTrue(dfa.addState("q"));
+	assertTrue(dfa.setStart("p"));
+	assertTrue(dfa.setFinal("q"));
+	assertTrue(dfa.addTransition("p", "q", 'b'));
+	assertTrue(dfa.addTransition("p", "q", 'a'));
+	//a huge bound is cut down to the longest accepted string
+	List<String> all = new ArrayList<>();
+	dfa.enumerate(Integer.MAX_VALUE).forEachRemaining(all::add);
+	assertEquals(List.of("a", "b"), all);
+	
+	//an infinite language is still enumerated lazily
+	Iterator<String> bounded = dfa2().enumerate(12);
+	Iterator<String> unbounded = dfa2().enumerate(Integer.MAX_VALUE);
+	while (bounded.hasNext()) {
+		assertEquals(bounded.next(), unbounded.next());
+	}
+	assertTrue(unbounded.hasNext());
+	System.out.println("large bound analysis pass");
+}
+	
+//------------------- interleaved matcher tests ----------------------//
+@Test
+public void testBatch_1() {
+	DFA dfa = dfa2();
+	String[] inputs = new String[37];
+	for (int i = 0; i < inputs.length; i++) {
+		inputs[i] = Integer.toBinaryString(i * 7919);
+	}
+	inputs[3] = "";
+	inputs[5] = "0120";
+	inputs[8] = "111011111111110";
+	inputs[9] = "1110111111111010";
+	boolean[] results = dfa.acceptsAll(inputs);
+	for (int i = 0; i < inputs.length; i++) {
+		assertEquals(inputs[i], dfa.accepts(inputs[i]), results[i]);
+	}
+	System.out.println("dfa2 batch accept pass");
+}
+
+@Test
+public void testInterleaved_1() {
+	DFA dfa = dfa3();
+	InterleavedMatcher matcher = new InterleavedMatcher(dfa.compile());
+	String[] inputs = {"121212121", "12221212121", "12", "2", "1212", "1".repeat(100) + "3", "1".repeat(200)};
+	boolean[] results = new boolean[inputs.length];
+	matcher.accepts(inputs, results);
+	for (int i = 0; i < inputs.length; i++) {
+		assertEquals(dfa.accepts(inputs[i]), results[i]);
+	}
+	System.out.println("dfa3 batch accept pass");
+}
+	
+//------------------- stride table tests ----------------------//
+@Test
+public void testStride_1() {
+	DFA dfa = dfa2();
+	StrideDFA strided = dfa.compileStrided(8, 1 << 20);
+	assertEquals(8, strided.stride());
+	//the budget limits the stride: 5 states * 2^4 cells fit, 5 * 2^8 do not
+	assertEquals(4, dfa.compileStrided(8, 100).stride());
+	assertEquals(1, dfa.compileStrided(1, 1 << 20).stride());
+	
+	for (int i = 0; i < 2000; i++) {
+		String s = Integer.toBinaryString(i * 31337);
+		assertEquals(s, dfa.accepts(s), strided.accepts(s));
+	}
+	assertFalse(strided.accepts("010"));
+	assertTrue(strided.accepts("00"));
+	assertFalse(strided.accepts("101"));
+	assertTrue(strided.accepts("111011111111110"));
+	assertFalse(strided.accepts("1110111111111010"));
+	assertFalse(strided.accepts("000000002"));
+	System.out.println("dfa2 stride accept pass");
+}
+
+@Test
+public void testStride_2() {
+	DFA dfa = dfa3();
+	StrideDFA strided = dfa.compileStrided(4, 1 << 20);
+	assertEquals(4, strided.stride());
+	for (String s : new String[] {"121212121", "12221212121", "12", "2", "1212", "", "1", "21"}) {
+		assertEquals(dfa.accepts(s), strided.accepts(s));
+	}
+	System.out.println("dfa3 stride accept pass");
+}
+
+@Test
+public void testStride_3() {
+	//strings of a whose length is a multiple of 3
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addState("0");
+	dfa.addState("1");
+	dfa.addState("2");
+	dfa.setStart("0");
+	dfa.setFinal("0");
+	dfa.addTransition("0", "1", 'a');
+	dfa.addTransition("1", "2", 'a');
+	dfa.addTransition("2", "0", 'a');
+	
+	//a one-symbol alphabet has one tuple per stride, so any stride fits
+	StrideDFA strided = dfa.compileStrided(16, 1 << 20);
+	assertEquals(16, strided.stride());
+	assertEquals(1 << 30, dfa.compileStrided(Integer.MAX_VALUE, 1 << 20).stride());
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < 100; i++) {
+		assertEquals(sb.toString(), dfa.accepts(sb.toString()), strided.accepts(sb));
+		sb.append('a');
+	}
+	assertFalse(strided.accepts("aab"));
+	System.out.println("unary stride accept pass");
+}
+	
+//------------------- generated matcher tests ----------------------//
+@Test
+public void testGenerated_1() {
+	DFA dfa = dfa3();
+	Matcher matcher = dfa.specialize();
+	assertFalse(matcher instanceof CompactDFA);
+	assertTrue(matcher.accepts("121212121"));
+	assertTrue(matcher.accepts("12221212121"));
+	assertFalse(matcher.accepts("12"));
+	assertFalse(matcher.accepts("2"));
+	assertFalse(matcher.accepts("1212"));
+	assertFalse(matcher.accepts("3"));
+	assertFalse(matcher.accepts(""));
+	System.out.println("dfa3 generated accept pass");
+}
+
+@Test
+public void testGenerated_2() {
+	DFA dfa = dfa2();
+	Matcher matcher = dfa.specialize();
+	assertFalse(matcher instanceof CompactDFA);
+	for (int i = 0; i < 2000; i++) {
+		String s = Integer.toBinaryString(i * 7919);
+		assertEquals(s, dfa.accepts(s), matcher.accepts(s));
+	}
+	//too many states falls back to the table engine
+	assertTrue(MatcherGenerator.generate(dfa.compile(), 2) instanceof CompactDFA);
+	
+	DFA empty = new DFA();
+	assertFalse(empty.specialize().accepts(""));
+	System.out.println("dfa2 generated accept pass");
+}
+	
+//------------------- minimization and cache tests ----------------------//
+@Test
+public void testMinimize_1() {
+	DFA dfa = dfa3();
+	DFA min = dfa.minimize();
+	//B and E merge, C and F merge
+	String expStr = "Q={A C B G D}\n"
+			+ "Sigma = {2 1}\n"
+			+ "delta =\n"
+			+ "	2	1\n"
+			+ "A	C	B\n"
+			+ "C	G	C\n"
+			+ "B	B	D\n"
+			+ "G	G	C\n"
+			+ "D	B	D\n"
+			+ "q0 = A\n"
+			+ "F = {G D}\n";
+	assertEquals(expStr.replaceAll("\\s", ""), min.toString().replaceAll("\\s", ""));
+	assertTrue(min.accepts("121212121"));
+	assertTrue(min.accepts("12221212121"));
+	assertFalse(min.accepts("12"));
+	assertFalse(min.accepts("2"));
+	assertFalse(min.accepts("1212"));
+	System.out.println("dfa3 minimize pass");
+}
+
+@Test
+public void testMinimize_2() {
+	DFA dfa = dfa2();
+	assertEquals(4, dfa.minimize().compile().stateCount());
+	for (int i = 0; i < 1024; i++) {
+		String s = Integer.toBinaryString(i);
+		assertEquals(dfa.accepts(s), dfa.minimize().accepts(s));
+	}
+	DFA empty = dfa2();
+	assertTrue(empty.unsetFinal("3"));
+	assertEquals(1, empty.minimize().compile().stateCount());
+	assertTrue(empty.minimize().isEmpty());
+	System.out.println("dfa2 minimize pass");
+}
+
+@Test
+public void testContentHash() {
+	DFA dfa = dfa1();
+	DFA renamed = new DFA();
+	renamed.addSigma('1');
+	renamed.addSigma('0');
+	renamed.addState("y");
+	renamed.addState("x");
+	renamed.addState("unreachable");
+	renamed.setStart("x");
+	renamed.setFinal("y");
+	renamed.addTransition("x", "x", '0');
+	renamed.addTransition("x", "y", '1');
+	renamed.addTransition("y", "x", '0');
+	renamed.addTransition("y", "y", '1');
+	assertEquals(64, dfa.contentHash().length());
+	assertEquals(dfa.contentHash(), renamed.contentHash());
+	assertNotEquals(dfa.contentHash(), dfa.swap('0', '1').contentHash());
+	System.out.println("content hash pass");
+}
+
+@Test
+public void testCache() throws IOException {
+	Path dir = Files.createTempDirectory("dfacache");
+	try {
+		DFACache cache = new DFACache(dir, 1 << 20);
+		DFA dfa = dfa3();
+		DFA min = cache.minimized(dfa);
+		assertEquals(dfa.minimize().toString(), min.toString());
+		assertTrue(cache.size() > 0);
+		
+		//a second cache on the same directory loads the stored artifact
+		DFACache reopened = new DFACache(dir, 1 << 20);
+		DFA loaded = reopened.minimized(dfa3());
+		assertNotSame(min, loaded);
+		assertEquals(min.toString(), loaded.toString());
+		assertTrue(loaded.accepts("121212121"));
+		
+		//corrupt entries are dropped and recomputed
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				byte[] bytes = Files.readAllBytes(entry);
+				bytes[bytes.length - 3] ^= 1;
+				Files.write(entry, bytes);
+			}
+		}
+		assertEquals(min.toString(), reopened.minimized(dfa3()).toString());
+		
+		//DFAs that differ only in names, symbol order or unreachable
+		//states get their own entries, named as their own minimize()
+		DFA renamed = new DFA();
+		DFA reordered = new DFA();
+		DFA unreachable = dfa1();
+		renamed.addSigma('0');
+		renamed.addSigma('1');
+		reordered.addSigma('1');
+		reordered.addSigma('0');
+		for (DFA d : new DFA[] {renamed, reordered}) {
+			String a = d == renamed ? "x" : "a";
+			String b = d == renamed ? "y" : "b";
+			assertTrue(d.addState(a));
+			assertTrue(d.addState(b));
+			assertTrue(d.setStart(a));
+			assertTrue(d.setFinal(b));
+			assertTrue(d.addTransition(a, a, '0'));
+			assertTrue(d.addTransition(a, b, '1'));
+			assertTrue(d.addTransition(b, a, '0'));
+			assertTrue(d.addTransition(b, b, '1'));
+		}
+		assertTrue(unreachable.addState("c"));
+		assertTrue(unreachable.setFinal("c"));
+		assertTrue(unreachable.addTransition("c", "a", '0'));
+		cache.minimized(dfa1());
+		for (DFA d : new DFA[] {dfa1(), renamed, reordered, unreachable}) {
+			String expected = d.minimize().toString();
+			assertEquals(expected, new DFACache(dir, 1 << 20).minimized(d).toString());
+			assertEquals(expected, new DFACache(dir, 1 << 20).minimized(d).toString());
+		}
+		
+		//compiled tables are stored under the content hash and can be
+		//loaded by a process that only kept the hash
+		String hash = cache.storeCompiled(dfa3());
+		assertEquals(dfa3().contentHash(), hash);
+		CompactDFA table = new DFACache(dir, 1 << 20).compiled(hash);
+		assertNotNull(table);
+		assertEquals(0, table.startState());
+		assertEquals(dfa3().compile().stateCount(), table.stateCount());
+		for (String s : new String[] {"", "1", "12", "121212121", "2", "3", "1213"}) {
+			assertEquals(dfa3().accepts(s), table.accepts(s));
+		}
+		assertEquals(renamed.contentHash(), reordered.contentHash());
+		String shared = cache.storeCompiled(renamed);
+		assertEquals(shared, cache.storeCompiled(reordered));
+		CompactDFA named = cache.compiled(shared);
+		assertEquals("x", named.stateName(0));
+		assertEquals('0', named.symbol(0));
+		assertTrue(named.accepts("0101"));
+		assertFalse(named.accepts("10"));
+		assertNull(cache.compiled(dfa2().contentHash()));
+		//only the reachable states are kept
+		assertEquals(dfa1().compile().stateCount(),
+				cache.compiled(cache.storeCompiled(unreachable)).stateCount());
+		try {
+			cache.compiled("../" + hash);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		
+		//a tiny limit evicts entries
+		DFACache tiny = new DFACache(dir, 1);
+		tiny.minimized(dfa2());
+		assertEquals(0, tiny.size());
+	} finally {
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				Files.delete(entry);
+			}
+		}
+		Files.delete(dir);
+	}
+	System.out.println("dfa cache pass");
+}
+	
+//------------------- equality and registry tests ----------------------//
+@Test
+public void testEquals() {
+	assertEquals(dfa1(), dfa1());
+	assertEquals(dfa1().hashCode(), dfa1().hashCode());
+	assertNotEquals(dfa1(), dfa2());
+	assertNotEquals(dfa1(), dfa1().swap('0', '1'));
+	
+	//dfa3 is not minimal, so it differs structurally but not in language;
+	//its language is also symmetric in 1 and 2
+	DFA dfa = dfa3();
+	assertNotEquals(dfa, dfa.minimize());
+	assertTrue(dfa.equivalent(dfa.minimize()));
+	assertTrue(dfa.equivalent(dfa.swap('1', '2')));
+	assertFalse(dfa1().equivalent(dfa1().swap('0', '1')));
+	
+	DFA changed = dfa1();
+	assertTrue(changed.unsetFinal("b"));
+	assertNotEquals(dfa1(), changed);
+	System.out.println("dfa equals pass");
+}
+
+@Test
+public void testRegistry() throws InterruptedException {
+	DFARegistry structural = new DFARegistry(DFARegistry.Mode.STRUCTURAL);
+	DFA shared = structural.intern(dfa3());
+	assertSame(shared, structural.intern(dfa3()));
+	assertNotSame(shared, structural.intern(dfa3().minimize()));
+	assertEquals(2, structural.size());
+	
+	DFARegistry language = new DFARegistry(DFARegistry.Mode.LANGUAGE);
+	DFA min = language.intern(dfa3());
+	assertSame(min, language.intern(dfa3().minimize()));
+	assertEquals(1, language.size());
+	
+	DFARegistry concurrent = new DFARegistry(DFARegistry.Mode.STRUCTURAL);
+	DFA[] results = new DFA[8];
+	Thread[] threads = new Thread[results.length];
+	for (int i = 0; i < threads.length; i++) {
+		int id = i;
+		threads[i] = new Thread(() -> results[id] = concurrent.intern(dfa2()));
+		threads[i].start();
+	}
+	for (Thread t : threads) {
+		t.join();
+	}
+	for (DFA result : results) {
+		assertSame(results[0], result);
+	}
+	
+	//DFAs nobody refers to any more are dropped from the registry
+	DFARegistry weak = new DFARegistry(DFARegistry.Mode.STRUCTURAL);
+	DFA kept = weak.intern(dfa1());
+	weak.intern(dfa2());
+	weak.intern(dfa3());
+	assertEquals(3, weak.size());
+	for (int i = 0; i < 100 && weak.size() > 1; i++) {
+		System.gc();
+		Thread.sleep(10);
+	}
+	assertEquals(1, weak.size());
+	assertSame(kept, weak.intern(dfa1()));
+	DFA again = dfa2();
+	assertSame(again, weak.intern(again));
+	assertEquals(2, weak.size());
+	System.out.println("dfa registry pass");
+}
+	
+//------------------- trace tests ----------------------//
+@Test
+public void testTrace_1() {
+	DFA dfa = dfa2();
+	int[] path = new int[32];
+	//states are numbered 3, 0, 1, 2 in order of addition
+	assertEquals(3, dfa.trace("010", path));
+	assertArrayEquals(new int[] {2, 3, 2}, Arrays.copyOf(path, 3));
+	assertEquals(2, dfa.trace("01201", path));
+	assertEquals(0, dfa.trace("e", path));
+	assertEquals(0, dfa.trace("", path));
+	
+	CompactDFA compact = dfa.compile();
+	assertEquals(2, dfa.trace("00", path));
+	assertEquals("3", compact.stateName(path[1]));
+	assertTrue(compact.isFinal(path[1]));
+	
+	try {
+		dfa.trace("0101", new int[3]);
+		fail("short buffer must be rejected");
+	} catch (IllegalArgumentException e) {
+		// expected
+	}
+	assertEquals(-1, new DFA().trace("", path));
+	System.out.println("dfa2 trace pass");
+}
+
+@Test
+public void testTrace_2() {
+	DFA dfa = dfa3();
+	assertTrue(dfa.removeTransition("B", '2'));
+	IntBuffer buffer = IntBuffer.allocate(16);
+	buffer.put(99);
+	assertEquals(4, dfa.trace("1111", buffer));
+	//the run stopped at the missing transition out of B
+	assertEquals(1, dfa.trace("12", buffer));
+	assertEquals(6, buffer.position());
+	assertEquals(99, buffer.get(0));
+	assertEquals("D", dfa.compile().stateName(buffer.get(4)));
+	assertEquals("B", dfa.compile().stateName(buffer.get(5)));
+	System.out.println("dfa3 trace pass");
+}
+
+//------------------- lexer tests ----------------------//
+private DFA lexerDFA() {
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addSigma('b');
+	dfa.addSigma('=');
+	dfa.addState("S");
+	dfa.setStart("S");
+	dfa.addState("A");
+	dfa.addState("AB");
+	dfa.addState("I");
+	dfa.addState("E");
+	dfa.addState("EE");
+	dfa.setFinal("A");
+	dfa.setFinal("AB");
+	dfa.setFinal("I");
+	dfa.setFinal("E");
+	dfa.setFinal("EE");
+	dfa.addTransition("S", "A", 'a');
+	dfa.addTransition("S", "I", 'b');
+	dfa.addTransition("A", "I", 'a');
+	dfa.addTransition("A", "AB", 'b');
+	dfa.addTransition("AB", "I", 'a');
+	dfa.addTransition("AB", "I", 'b');
+	dfa.addTransition("I", "I", 'a');
+	dfa.addTransition("I", "I", 'b');
+	dfa.addTransition("S", "E", '=');
+	dfa.addTransition("E", "EE", '=');
+	return dfa;
+}
+
+@Test
+public void testLexer_1() {
+	Lexer lexer = new Lexer(lexerDFA());
+	//"ab" is both an identifier and the keyword, the keyword wins
+	assertTrue(lexer.addRule("AB", 0, 5));
+	assertTrue(lexer.addRule("AB", 1, 10));
+	assertTrue(lexer.addRule("A", 0, 5));
+	assertTrue(lexer.addRule("I", 0, 5));
+	assertTrue(lexer.addRule("E", 2, 0));
+	assertFalse(lexer.addRule("S", 3, 0));
+	assertFalse(lexer.addRule("Z", 3, 0));
+	
+	Lexer.TokenBuffer tokens = new Lexer.TokenBuffer();
+	lexer.tokenize("ab==a=x", tokens);
+	assertEquals(4, tokens.size());
+	assertEquals(1, tokens.errors());
+	int[][] expected = {{0, 2, 1}, {2, 4, -1}, {4, 5, 0}, {5, 6, 2}};
+	for (int i = 0; i < expected.length; i++) {
+		assertEquals(expected[i][0], tokens.start(i));
+		assertEquals(expected[i][1], tokens.end(i));
+		assertEquals(expected[i][2], tokens.rule(i));
+	}
+	
+	tokens.clear();
+	lexer.tokenize("abb", tokens);
+	assertEquals(1, tokens.size());
+	assertEquals(3, tokens.end(0));
+	assertEquals(0, tokens.rule(0));
+	System.out.println("lexer rules pass");
+}
+
+@Test
+public void testLexer_2() throws IOException {
+	//tokens are "a" and a+b, so a run of a's makes every scan back up
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addSigma('b');
+	dfa.addState("S");
+	dfa.setStart("S");
+	dfa.addState("F");
+	dfa.addState("M");
+	dfa.addState("T");
+	dfa.setFinal("F");
+	dfa.setFinal("T");
+	dfa.addTransition("S", "F", 'a');
+	dfa.addTransition("F", "M", 'a');
+	dfa.addTransition("F", "T", 'b');
+	dfa.addTransition("M", "M", 'a');
+	dfa.addTransition("M", "T", 'b');
+	Lexer lexer = new Lexer(dfa);
+	
+	String run = "a".repeat(200000);
+	Lexer.TokenBuffer tokens = new Lexer.TokenBuffer();
+	lexer.tokenize(run, tokens);
+	assertEquals(run.length(), tokens.size());
+	assertEquals(run.length(), tokens.end(run.length() - 1));
+	
+	//a token longer than the reader buffer, then a backed up run
+	String input = "a".repeat(20000) + "b" + "a".repeat(20000) + "bb";
+	Lexer.TokenBuffer fromString = new Lexer.TokenBuffer();
+	Lexer.TokenBuffer fromReader = new Lexer.TokenBuffer();
+	lexer.tokenize(input, fromString);
+	lexer.tokenize(new StringReader(input), fromReader);
+	assertEquals(20001, fromString.end(0));
+	assertEquals(2, fromString.size());
+	assertEquals(1, fromString.errors());
+	assertEquals(fromString.size(), fromReader.size());
+	assertEquals(fromString.errors(), fromReader.errors());
+	for (int i = 0; i < fromString.size(); i++) {
+		assertEquals(fromString.start(i), fromReader.start(i));
+		assertEquals(fromString.end(i), fromReader.end(i));
+	}
+	System.out.println("lexer munch pass");
+}
+
+//------------------- reverse tests ----------------------//
+//all strings over the alphabet up to a length, shortest first
+private List<String> allStrings(String alphabet, int maxLen) {
+	List<String> out = new ArrayList<>();
+	out.add("");
+	for (int i = 0; i < out.size(); i++) {
+		if (out.get(i).length() < maxLen) {
+			for (char c : alphabet.toCharArray()) {
+				out.add(out.get(i) + c);
+			}
+		}
+	}
+	return out;
+}
+
+@Test
+public void testReverse_1() {
+	DFA[] dfas = {dfa1(), dfa2(), dfa3()};
+	String[] alphabets = {"01", "01", "12"};
+	for (int d = 0; d < dfas.length; d++) {
+		DFA dfa = dfas[d];
+		DFA reversed = dfa.reverse();
+		BackwardMatcher backward = dfa.backward();
+		for (String s : allStrings(alphabets[d], 8)) {
+			String r = new StringBuilder(s).reverse().toString();
+			assertEquals(s, dfa.accepts(s), reversed.accepts(r));
+			assertEquals(s, dfa.accepts(s), backward.accepts(s));
+		}
+		assertTrue(reversed.reverse().equivalent(dfa));
+		
+		DFA brzozowski = dfa.minimizeBrzozowski();
+		assertTrue(brzozowski.equivalent(dfa));
+		assertEquals(dfa.minimize(), brzozowski);
+	}
+	assertNull(dfa3().reverse(1));
+	System.out.println("reverse pass");
+}
+
+@Test
+public void testReverse_2() {
+	//strings over {a, b} ending in ab
+	DFA dfa = new DFA();
+	dfa.addSigma('a');
+	dfa.addSigma('b');
+	dfa.addState("0");
+	dfa.addState("1");
+	dfa.addState("2");
+	dfa.setStart("0");
+	dfa.setFinal("2");
+	dfa.addTransition("0", "1", 'a');
+	dfa.addTransition("0", "0", 'b');
+	dfa.addTransition("1", "1", 'a');
+	dfa.addTransition("1", "2", 'b');
+	dfa.addTransition("2", "1", 'a');
+	dfa.addTransition("2", "0", 'b');
+	
+	BackwardMatcher backward = dfa.backward();
+	//decided after reading the last two characters
+	assertEquals(4, backward.stopIndex("bbbbab"));
+	assertTrue(backward.accepts("bbbbab"));
+	//rejected by the last character
+	assertEquals(-1, backward.stopIndex("bbbbaa"));
+	assertFalse(backward.accepts("bbbbaa"));
+	//characters outside the alphabet are still rejected
+	assertFalse(backward.accepts("bxbab"));
+	assertFalse(backward.accepts(""));
+	
+	//the matcher follows changes to the DFA
+	dfa.setFinal("0");
+	assertTrue(dfa.backward().accepts(""));
+	assertTrue(dfa.backward().accepts("abb"));
+	assertEquals(Set.of('a', 'b'), dfa.reverse().getSigma());
+	System.out.println("backward pass");
+}
+
+@Test
+public void testReverse_3() {
+	//state names that look like subset names: 1*01* with states "a, b",
+	//"a" and "b", whose reversal reaches both {a, b} and {"a, b"}
+	DFA dfa = new DFA();
+	dfa.addSigma('0');
+	dfa.addSigma('1');
+	assertTrue(dfa.addState("a, b"));
+	assertTrue(dfa.addState("a"));
+	assertTrue(dfa.addState("b"));
+	assertTrue(dfa.addState("[a]"));
+	assertTrue(dfa.setStart("a, b"));
+	assertTrue(dfa.setFinal("a"));
+	assertTrue(dfa.setFinal("b"));
+	assertTrue(dfa.addTransition("a, b", "a", '0'));
+	assertTrue(dfa.addTransition("a, b", "a, b", '1'));
+	assertTrue(dfa.addTransition("a", "b", '1'));
+	assertTrue(dfa.addTransition("b", "b", '1'));
+	assertTrue(dfa.addTransition("[a]", "a", '0'));
+	
+	DFA reversed = dfa.reverse();
+	for (String s : allStrings("01", 8)) {
+		String r = new StringBuilder(s).reverse().toString();
+		assertEquals(s, dfa.accepts(s), reversed.accepts(r));
+	}
+	assertTrue(reversed.reverse().equivalent(dfa));
+	assertEquals(dfa.minimize(), dfa.minimizeBrzozowski());
+	System.out.println("reverse names pass");
+}
+	
 }
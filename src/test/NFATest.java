@@ -0,0 +1,160 @@
+package test;
+
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+public class NFATest {
+	
+	
+	//------------------- nfa1 tests ----------------------//
+	//strings over {0,1} whose third symbol from the end is 1
+	private NFA nfa1() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.addState("b"));
+		assertTrue(nfa.addState("c"));
+		assertTrue(nfa.addState("d"));
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("d"));
+		
+		assertFalse(nfa.addState("a"));
+		assertFalse(nfa.setStart("x"));
+		
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("a", "b"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '0'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '1'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '1'));
+		
+		assertFalse(nfa.addTransition("a", Set.of("x"), '0'));
+		assertFalse(nfa.addTransition("a", Set.of("b"), '2'));
+		
+		return nfa;
+	}
+	
+	@Test
+	public void test1_1() {
+		NFA nfa = nfa1();
+		assertFalse(nfa.isDFA());
+		assertTrue(nfa.accepts("100"));
+		assertTrue(nfa.accepts("0111"));
+		assertFalse(nfa.accepts("011"));
+		assertFalse(nfa.accepts("10"));
+		assertFalse(nfa.accepts(""));
+		assertFalse(nfa.accepts("1002"));
+		System.out.println("nfa1 accept pass");
+	}
+	
+	@Test
+	public void test1_2() {
+		NFA nfa = nfa1();
+		DFA dfa = nfa.toDFA();
+		//the subset construction yields the 8 suffix-tracking states
+		assertEquals(8, dfa.compile().stateCount());
+		assertNull(nfa.toDFA(7));
+		for (int i = 0; i < 512; i++) {
+			String s = Integer.toBinaryString(i);
+			assertEquals(s, nfa.accepts(s), dfa.accepts(s));
+		}
+		System.out.println("nfa1 toDFA pass");
+	}
+	
+	//------------------- nfa2 tests ----------------------//
+	//(ab)* | a*, built with epsilon transitions
+	private NFA nfa2() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		nfa.addSigma(NFA.EPSILON);
+		assertEquals(Set.of('a', 'b'), nfa.getSigma());
+		
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.addState("p"));
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.addState("r"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.setFinal("p"));
+		assertTrue(nfa.setFinal("r"));
+		
+		assertTrue(nfa.addTransition("s", Set.of("p", "r"), NFA.EPSILON));
+		assertTrue(nfa.addTransition("p", Set.of("q"), 'a'));
+		assertTrue(nfa.addTransition("q", Set.of("p"), 'b'));
+		assertTrue(nfa.addTransition("r", Set.of("r"), 'a'));
+		return nfa;
+	}
+	
+	@Test
+	public void test2_1() {
+		NFA nfa = nfa2();
+		assertEquals(3, nfa.eClosure((NFAState) nfa.getState("s")).size());
+		assertTrue(nfa.accepts(""));
+		assertTrue(nfa.accepts("abab"));
+		assertTrue(nfa.accepts("aaa"));
+		assertTrue(nfa.accepts("a"));
+		assertFalse(nfa.accepts("aab"));
+		assertFalse(nfa.accepts("b"));
+		
+		DFA dfa = nfa.toDFA();
+		for (String s : new String[] {"", "abab", "aaa", "a", "aab", "b", "ababa", "abb"}) {
+			assertEquals(s, nfa.accepts(s), dfa.accepts(s));
+		}
+		System.out.println("nfa2 epsilon pass");
+	}
+	
+	@Test
+	public void test2_2() {
+		NFA nfa = nfa2();
+		assertTrue(nfa.removeState("r"));
+		assertFalse(nfa.accepts("aaa"));
+		assertTrue(nfa.accepts("ab"));
+		assertTrue(nfa.unsetFinal("p"));
+		assertFalse(nfa.accepts(""));
+		assertTrue(nfa.removeSigma('b'));
+		assertFalse(nfa.removeSigma('b'));
+		assertEquals(Set.of('a'), nfa.getSigma());
+		System.out.println("nfa2 removal pass");
+	}
+	
+	//------------------- subset naming tests ----------------------//
+	@Test
+	public void test3_1() {
+		//the state "a, b" must not be confused with the subset of a and b
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		assertTrue(nfa.addState("x"));
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.addState("b"));
+		assertTrue(nfa.addState("a, b"));
+		assertTrue(nfa.addState("[a]"));
+		assertTrue(nfa.setStart("x"));
+		assertTrue(nfa.setFinal("a, b"));
+		assertTrue(nfa.addTransition("x", Set.of("a", "b"), '0'));
+		assertTrue(nfa.addTransition("x", Set.of("a, b"), '1'));
+		assertTrue(nfa.addTransition("a", Set.of("[a]"), '0'));
+		
+		DFA dfa = nfa.toDFA();
+		assertFalse(nfa.accepts("0"));
+		assertFalse(dfa.accepts("0"));
+		assertTrue(nfa.accepts("1"));
+		assertTrue(dfa.accepts("1"));
+		assertFalse(dfa.accepts("00"));
+		assertNotNull(dfa.getState("[a, b]"));
+		assertNotNull(dfa.getState("[a\\, b]"));
+		assertNotNull(dfa.getState("[\\[a\\]]"));
+		System.out.println("subset naming pass");
+	}
+	
+}
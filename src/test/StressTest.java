@@ -0,0 +1,359 @@
+package test;
+
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fa.dfa.CompactDFA;
+import fa.dfa.DFA;
+import fa.dfa.InterleavedMatcher;
+import fa.dfa.Lexer;
+import fa.dfa.Matcher;
+import fa.dfa.OffHeapTransitionTable;
+import fa.dfa.StrideDFA;
+import fa.dfa.VersionedDFA;
+import fa.dfa.gen.Corpus;
+import fa.dfa.gen.DFAGenerator;
+import fa.dfa.gen.Families;
+import fa.nfa.NFA;
+
+/**
+ * Cross-checks the optimized matching paths against DFA.accepts on
+ * generated automata. The size of the large test can be raised with
+ * -Dstress.states=1000000.
+ */
+public class StressTest {
+
+	private static final String[] ALPHABETS = {"ab", "abc", "0123"};
+	private static final double[] DENSITIES = {0.3, 0.8, 1.0};
+
+	//every input of a corpus: accepted, rejected and random strings
+	private List<String> inputs(Corpus corpus, int count, int maxLen) {
+		List<String> inputs = new ArrayList<>();
+		inputs.addAll(corpus.accepted(count, maxLen));
+		inputs.addAll(corpus.rejected(count, maxLen));
+		for (int i = 0; i < count; i++) {
+			inputs.add(corpus.random(maxLen));
+		}
+		return inputs;
+	}
+
+	//checks every optimized path of dfa on the inputs
+	private void crossCheck(DFA dfa, List<String> inputs) {
+		CompactDFA compact = dfa.compile();
+		VersionedDFA versioned = new VersionedDFA(dfa);
+		StrideDFA strided = dfa.compileStrided(4, 1 << 20);
+		Matcher generated = dfa.specialize();
+		if (compact.stateCount() <= 16) {
+			//small automata must get generated code, not the table fallback
+			assertFalse(generated instanceof CompactDFA);
+		}
+		DFA minimal = dfa.minimize();
+		boolean[] batch = dfa.acceptsAll(inputs.toArray(new CharSequence[0]));
+		DFA reversed = dfa.reverse(10000);
+		int longest = 0;
+		for (String s : inputs) {
+			longest = Math.max(longest, s.length());
+		}
+		int[] path = new int[longest];
+		try (OffHeapTransitionTable table = OffHeapTransitionTable.of(dfa)) {
+			for (int j = 0; j < inputs.size(); j++) {
+				String s = inputs.get(j);
+				boolean expected = dfa.accepts(s);
+				assertEquals(s, expected, compact.accepts(s));
+				assertEquals(s, expected, table.accepts(s));
+				assertEquals(s, expected, versioned.accepts(s));
+				assertEquals(s, expected, strided.accepts(s));
+				assertEquals(s, expected, generated.accepts(s));
+				assertEquals(s, expected, minimal.accepts(s));
+				assertEquals(s, expected, batch[j]);
+				if (reversed != null) {
+					assertEquals(s, expected, reversed.accepts(new StringBuilder(s).reverse().toString()));
+					assertEquals(s, expected, dfa.backward().accepts(s));
+				}
+
+				int read = dfa.trace(s, path);
+				int last = s.isEmpty() ? compact.startState() : path[s.length() - 1];
+				assertEquals(s, expected, read == s.length() && compact.isFinal(last));
+			}
+		}
+		assertTrue(minimal.equivalent(dfa));
+		if (reversed != null) {
+			assertEquals(minimal, dfa.minimizeBrzozowski());
+		}
+		assertTrue(minimal.compile().stateCount() <= compact.stateCount());
+	}
+
+	//------------------- random DFA tests ----------------------//
+	@Test
+	public void testRandomDFAs() {
+		DFAGenerator gen = new DFAGenerator(361);
+		for (int round = 0; round < 60; round++) {
+			String alphabet = ALPHABETS[round % ALPHABETS.length];
+			double density = DENSITIES[round / ALPHABETS.length % DENSITIES.length];
+			DFA dfa = gen.random(1 + round, alphabet, density, 0.3);
+			Corpus corpus = new Corpus(dfa.compile(), round);
+			for (String s : corpus.accepted(20, 40)) {
+				assertTrue(s, dfa.accepts(s));
+			}
+			for (String s : corpus.rejected(20, 40)) {
+				assertFalse(s, dfa.accepts(s));
+			}
+			crossCheck(dfa, inputs(corpus, 20, 40));
+		}
+		System.out.println("random dfa pass");
+	}
+
+	@Test
+	public void testSeeds() {
+		DFA a = new DFAGenerator(7).random(50, "ab", 0.5, 0.5);
+		DFA b = new DFAGenerator(7).random(50, "ab", 0.5, 0.5);
+		DFA c = new DFAGenerator(8).random(50, "ab", 0.5, 0.5);
+		assertEquals(a, b);
+		assertNotEquals(a, c);
+
+		//the off-heap table holds the same automaton as the DFA
+		List<String> inputs = inputs(new Corpus(a.compile(), 7), 50, 30);
+		try (OffHeapTransitionTable table = new DFAGenerator(7).randomTable(50, "ab", 0.5, 0.5)) {
+			for (String s : inputs) {
+				assertEquals(s, a.accepts(s), table.accepts(s));
+			}
+		}
+
+		try {
+			new DFAGenerator(0).random(0, "ab", 0.5, 0.5);
+			fail("empty DFA must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		System.out.println("generator seed pass");
+	}
+
+	@Test
+	public void testRandomNFAs() {
+		DFAGenerator gen = new DFAGenerator(34);
+		for (int round = 0; round < 30; round++) {
+			NFA nfa = gen.randomNFA(2 + round % 10, "ab", 0.4, 0.3);
+			DFA dfa = nfa.toDFA();
+			Corpus corpus = new Corpus(dfa.compile(), round);
+			for (String s : inputs(corpus, 20, 20)) {
+				assertEquals(s, nfa.accepts(s), dfa.accepts(s));
+			}
+		}
+		System.out.println("random nfa pass");
+	}
+
+	//every string over a sorted alphabet of length at most maxLen, in shortlex order
+	private List<String> allStrings(String alphabet, int maxLen) {
+		List<String> all = new ArrayList<>();
+		all.add("");
+		for (int from = 0; all.get(from).length() < maxLen; from++) {
+			for (char c : alphabet.toCharArray()) {
+				all.add(all.get(from) + c);
+			}
+			if (from + 1 == all.size()) {
+				break;
+			}
+		}
+		return all;
+	}
+
+	//records tokens and errors in input order
+	private static class EventSink implements Lexer.TokenSink {
+		final List<String> events = new ArrayList<>();
+
+		@Override
+		public void token(int start, int end, int rule, int state) {
+			events.add(start + "-" + end + ":" + rule + "@" + state);
+		}
+
+		@Override
+		public void error(int position) {
+			events.add("error " + position);
+		}
+	}
+
+	//maximal munch by trying every token end from the longest down
+	private List<String> naiveMunch(CompactDFA dfa, int[] ruleOf, String input) {
+		EventSink expected = new EventSink();
+		int pos = 0;
+		while (pos < input.length()) {
+			int end = input.length();
+			while (end > pos && !dfa.accepts(input.substring(pos, end))) {
+				end--;
+			}
+			if (end == pos) {
+				expected.error(pos);
+				pos++;
+				continue;
+			}
+			int state = dfa.startState();
+			for (int i = pos; i < end; i++) {
+				state = dfa.step(state, input.charAt(i));
+			}
+			expected.token(pos, end, ruleOf[state], state);
+			pos = end;
+		}
+		return expected.events;
+	}
+
+	//------------------- analysis and lexer tests ----------------------//
+	@Test
+	public void testLanguageAnalysis() {
+		DFAGenerator gen = new DFAGenerator(52);
+		int maxLen = 7;
+		for (int round = 0; round < 60; round++) {
+			String alphabet = ALPHABETS[round % 2];
+			double density = DENSITIES[round / 2 % DENSITIES.length];
+			DFA dfa = gen.random(1 + round % 12, alphabet, density, 0.3);
+			List<String> accepted = new ArrayList<>();
+			for (String s : allStrings(alphabet, maxLen)) {
+				if (dfa.accepts(s)) {
+					accepted.add(s);
+				}
+			}
+
+			List<String> enumerated = new ArrayList<>();
+			for (Iterator<String> it = dfa.enumerate(maxLen); it.hasNext(); ) {
+				enumerated.add(it.next());
+			}
+			assertEquals(accepted, enumerated);
+
+			for (int length = 0; length <= maxLen; length++) {
+				long count = 0;
+				for (String s : accepted) {
+					if (s.length() == length) {
+						count++;
+					}
+				}
+				assertEquals(BigInteger.valueOf(count), dfa.countAccepted(length));
+				assertEquals(count % 1000, dfa.countAccepted(length, 1000));
+			}
+
+			String shortest = dfa.shortestAccepted();
+			if (accepted.isEmpty()) {
+				assertTrue(shortest == null || shortest.length() > maxLen);
+				assertEquals(shortest == null, dfa.isEmpty());
+			} else {
+				assertEquals(accepted.get(0), shortest);
+				assertFalse(dfa.isEmpty());
+			}
+		}
+		System.out.println("language analysis pass");
+	}
+
+	@Test
+	public void testLexer() throws IOException {
+		DFAGenerator gen = new DFAGenerator(83);
+		Random random = new Random(83);
+		for (int round = 0; round < 60; round++) {
+			String alphabet = ALPHABETS[round % ALPHABETS.length];
+			double density = DENSITIES[round / ALPHABETS.length % DENSITIES.length];
+			CompactDFA compact = gen.random(1 + round % 15, alphabet, density, 0.3).compile();
+			Lexer lexer = new Lexer(compact.toDFA());
+			int[] ruleOf = new int[compact.stateCount()];
+			for (int q = 0; q < ruleOf.length; q++) {
+				ruleOf[q] = compact.isFinal(q) ? q % 3 : -1;
+				assertEquals(compact.isFinal(q), lexer.addRule(compact.stateName(q), ruleOf[q], 0));
+			}
+
+			//inputs include characters outside the alphabet
+			String letters = alphabet + "#";
+			for (int i = 0; i < 30; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(60);
+				for (int j = 0; j < length; j++) {
+					sb.append(letters.charAt(random.nextInt(letters.length())));
+				}
+				String input = sb.toString();
+				List<String> expected = naiveMunch(compact, ruleOf, input);
+
+				EventSink fromString = new EventSink();
+				lexer.tokenize(input, fromString);
+				assertEquals(input, expected, fromString.events);
+				EventSink fromReader = new EventSink();
+				lexer.tokenize(new StringReader(input), fromReader);
+				assertEquals(input, expected, fromReader.events);
+			}
+		}
+		System.out.println("lexer munch pass");
+	}
+
+	//------------------- family tests ----------------------//
+	@Test
+	public void testFamilies() {
+		DFA counter = Families.counter(5, "xy");
+		assertTrue(counter.accepts("xyxyx"));
+		assertFalse(counter.accepts("xyxy"));
+		assertEquals(6, counter.minimize().compile().stateCount());
+
+		DFA mod7 = Families.modK(7, 10);
+		for (int v = 0; v < 300; v++) {
+			assertEquals(v % 7 == 0, mod7.accepts(Integer.toString(v)));
+		}
+		crossCheck(mod7, inputs(new Corpus(mod7.compile(), 7), 30, 12));
+
+		DFA worst = Families.hopcroftWorstCase(8);
+		assertEquals(256, worst.minimize().compile().stateCount());
+		crossCheck(worst, inputs(new Corpus(worst.compile(), 8), 30, 600));
+
+		NFA nfa = Families.nthFromEnd(6);
+		DFA dfa = nfa.toDFA();
+		assertEquals(64, dfa.minimize().compile().stateCount());
+		for (String s : inputs(new Corpus(dfa.compile(), 6), 40, 20)) {
+			assertEquals(s, nfa.accepts(s), dfa.accepts(s));
+			assertEquals(s, s.length() >= 6 && s.charAt(s.length() - 6) == '1', dfa.accepts(s));
+		}
+		System.out.println("families pass");
+	}
+
+	//------------------- interleaved matcher tests ----------------------//
+	@Test
+	public void testInterleaved() {
+		//tables on both sides of the size at which acceptsAll interleaves,
+		//with inputs shorter and longer than the settle check
+		int[] sizes = {1, 16, 1000, 10000, 30000};
+		int[] lengths = {0, 8, 64, 300};
+		for (int states : sizes) {
+			DFA dfa = new DFAGenerator(states).random(states, "abcd", 1.0, 0.3);
+			CompactDFA compact = dfa.compile();
+			InterleavedMatcher matcher = new InterleavedMatcher(compact);
+			for (int maxLen : lengths) {
+				Corpus corpus = new Corpus(compact, maxLen);
+				List<String> list = inputs(corpus, 30, maxLen);
+				list.add("abce");
+				list.add("x" + "a".repeat(maxLen));
+				CharSequence[] inputs = list.toArray(new CharSequence[0]);
+				boolean[] results = new boolean[inputs.length];
+				matcher.accepts(inputs, results);
+				boolean[] all = dfa.acceptsAll(inputs);
+				for (int i = 0; i < inputs.length; i++) {
+					String s = inputs[i].toString();
+					assertEquals(s, compact.accepts(s), results[i]);
+					assertEquals(s, compact.accepts(s), all[i]);
+				}
+			}
+		}
+		System.out.println("interleaved matcher pass");
+	}
+
+	//------------------- scale tests ----------------------//
+	@Test
+	public void testLarge() {
+		int states = Integer.getInteger("stress.states", 20000);
+		DFA dfa = new DFAGenerator(1000).random(states, "abcd", 0.9, 0.01);
+		Corpus corpus = new Corpus(dfa.compile(), 1000);
+		crossCheck(dfa, inputs(corpus, 100, 60));
+		System.out.println("large dfa pass");
+	}
+
+}